@@ -1,15 +1,23 @@
 package org.rob.bank.controller;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.rob.bank.model.Transaction;
 import org.rob.bank.service.AccountData;
+import org.rob.bank.service.AccountDataLoader;
+import org.rob.bank.service.LinkedTransactions;
+import org.rob.bank.service.LinkedTransactionsFile;
 import org.rob.bank.service.TransactionCsvReader;
+import org.rob.bank.service.TransactionLinker;
 import org.rob.bank.service.model.AccountQueryInput;
 import org.rob.bank.service.model.RelativeBalanceResult;
 
@@ -29,37 +37,121 @@ public final class App {
 	public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern(FORMAT_STRING);
 
 	/**
-	 * Launch app.
+	 * How many seconds a query waits for transactions in its date range to load.
+	 */
+	private static final long QUERY_TIMEOUT_SECONDS = 30;
+
+	/**
+	 * Classpath resource read when no data file is given.
+	 */
+	private static final String DEFAULT_DATA = "/transactionData.csv";
+
+	/**
+	 * How to run one query, or write a snapshot, from the command line.
+	 */
+	private static final String USAGE = "Usage: App [--data <file>] <accountId> <from> <to>%n" //
+			+ "       App [--data <file>] --snapshot <file" + LinkedTransactionsFile.SUFFIX + ">%n" //
+			+ "Dates are " + FORMAT_STRING + ". Data files ending " + LinkedTransactionsFile.SUFFIX
+			+ " are snapshots; others are CSV.%n";
+
+	/**
+	 * Launch app: interactively with no arguments, otherwise answer one query, or
+	 * write a snapshot, and exit.
 	 * 
-	 * @param args not used
+	 * @param args none; or optionally <code>--data</code> and a file, then either
+	 *             an account ID, from date and to date, or <code>--snapshot</code>
+	 *             and the file to write
 	 */
 	public static void main(String[] args) {
 		App app = new App();
-		app.run();
+		if (args.length == 0) {
+			app.run();
+			return;
+		}
+		System.exit(app.runOnce(args));
 	}
 
 	/**
-	 * Start process.
+	 * Answer one query, or write a snapshot, as a short-lived batch process.
+	 * 
+	 * @param args optionally <code>--data</code> and a file, then either an
+	 *             account ID, from date and to date, or <code>--snapshot</code>
+	 *             and the file to write
+	 * @return exit status: 0 on success
 	 */
-	private void run() {
-
-		// Read transactions from file.
-		String fileName = "/transactionData.csv";
-		List<Transaction> transactions = null;
+	private int runOnce(final String[] args) {
+		int next = 0;
+		String dataFile = null;
+		if (args.length > 1 && args[0].equals("--data")) {
+			dataFile = args[1];
+			next = 2;
+		}
 		try {
-			transactions = TransactionCsvReader.readFromFile(fileName);
+			if (args.length - next == 2 && args[next].equals("--snapshot")) {
+				LinkedTransactions linked = loadLinked(dataFile);
+				LinkedTransactionsFile.write(linked, Paths.get(args[next + 1]));
+				System.out.printf("Wrote %d transactions to %s%n", linked.getTransactions().size(), args[next + 1]);
+				return 0;
+			}
+			if (args.length - next != 3) {
+				System.err.printf(USAGE);
+				return 2;
+			}
+			AccountQueryInput input = AccountQueryInput.builder()//
+					.accountId(args[next])//
+					.fromString(args[next + 1])//
+					.toString(args[next + 2]).build();
+			AccountData accountData = new AccountData(loadLinked(dataFile));
+			System.out.printf("%s", accountData.retrieveRelativeBalance(input));
+			return 0;
+		} catch (DateTimeParseException | IllegalStateException e) {
+			System.err.printf("%s%n" + USAGE, e.getMessage());
+			return 2;
 		} catch (IOException ioe) {
-			ioe.printStackTrace();
-			System.err.println("Unable to read file " + fileName + " for data. Exiting.");
+			// A batch caller wants the reason, not a stack trace.
+			System.err.println("Unable to read file " + (dataFile == null ? DEFAULT_DATA : dataFile) + " for data: "
+					+ ioe.getMessage() + " Exiting.");
+			return 1;
 		}
+	}
 
-		// Quit if we failed to read them.
-		if (transactions == null) {
-			return;
+	/**
+	 * @param dataFile snapshot or CSV file on the file system; null for the default
+	 *                 data on the classpath
+	 * @return transactions linked and ready to query; any integrity issues in CSV
+	 *         data are reported and the transactions kept
+	 * @throws IOException if the file cannot be read
+	 */
+	private LinkedTransactions loadLinked(final String dataFile) throws IOException {
+		if (dataFile != null && dataFile.endsWith(LinkedTransactionsFile.SUFFIX)) {
+			// Already parsed and linked.
+			return LinkedTransactionsFile.read(Paths.get(dataFile));
 		}
+		List<Transaction> transactions = new ArrayList<>();
+		if (dataFile == null) {
+			TransactionCsvReader.readFromFile(DEFAULT_DATA, transactions::add);
+		} else {
+			TransactionCsvReader.readFromPath(Paths.get(dataFile), transactions::add);
+		}
+		LinkedTransactions linked = TransactionLinker.link(transactions, TransactionLinker.Policy.FLAG);
+		linked.getIssues().forEach(issue -> System.err.println("Integrity issue: " + issue));
+		return linked;
+	}
 
-		// Create service that can query the transactions.
-		AccountData service = new AccountData(transactions);
+	/**
+	 * Start process.
+	 */
+	private void run() {
+
+		// Read transactions from file in the background, answering queries as soon as
+		// the part of the file they need has been read.
+		String fileName = DEFAULT_DATA;
+		AccountDataLoader service = new AccountDataLoader(fileName, progress -> {
+			if (progress.isComplete()) {
+				System.out.printf("%n%s%n", progress);
+			}
+		});
+		service.start();
 
 		// Loop for eternity or until user cancels, getting input and searching for it,
 		// displaying results.
@@ -68,8 +160,20 @@ private void run() {
 		while (true) {
 			System.out.printf("Please enter search criteria. Control+c to exit at any time.%n%n");
 			AccountQueryInput input = obtainSearchCriteria(inputDevice);
-			RelativeBalanceResult retrieveRelativeBalance = service.retrieveRelativeBalance(input);
-			System.out.printf("%n%s%n", retrieveRelativeBalance);
+			try {
+				RelativeBalanceResult retrieveRelativeBalance = service.retrieveRelativeBalance(input,
+						QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				System.out.printf("%n%s%n", retrieveRelativeBalance);
+			} catch (TimeoutException te) {
+				System.out.printf("%n%s Please try again later.%n%n", te.getMessage());
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				System.err.println("Unable to read file " + fileName + " for data. Exiting.");
+				return;
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				return;
+			}
 		}
 	}
 
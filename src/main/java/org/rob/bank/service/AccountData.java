@@ -2,28 +2,367 @@
 
 import static org.rob.bank.model.TransactionType.REVERSAL;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.rob.bank.model.Transaction;
 import org.rob.bank.service.model.AccountQueryInput;
+import org.rob.bank.service.model.BalanceSeriesQueryInput;
+import org.rob.bank.service.model.Cents;
+import org.rob.bank.service.model.CounterpartyTotal;
+import org.rob.bank.service.model.QueryPlan;
+import org.rob.bank.service.model.QueryPlan.AccessPath;
 import org.rob.bank.service.model.RelativeBalanceResult;
+import org.rob.bank.service.model.StandingQueryInput;
 
 /**
  * Queries account data.
+ * <p>
+ * Transactions may be appended while queries run. Each append is published
+ * atomically as a new {@link Snapshot}, and each query pins the latest snapshot
+ * for as long as it runs, so it never sees half of a batch (e.g. a reversal
+ * without its effect on the transaction it reverses) and never waits for the
+ * writer. Versions of the data that only older snapshots need are dropped once
+ * no query has those snapshots pinned.
  */
 public final class AccountData {
 
 	/**
-	 * List of transactions this service will query.
+	 * Number of an account's transactions between balance checkpoints, by default.
 	 */
-	private final List<Transaction> transactions;
+	private static final int DEFAULT_CHECKPOINT_INTERVAL = 256;
+
+	/**
+	 * Number of an account's transactions in a date range from which a
+	 * counterparty breakdown is aggregated in parallel, by default.
+	 */
+	private static final int DEFAULT_PARALLEL_BREAKDOWN_THRESHOLD = 1 << 16;
+
+	/**
+	 * Latest published snapshot; what new queries see.
+	 */
+	private final AtomicReference<Snapshot> current;
+
+	/**
+	 * Snapshots replaced by a later one that may still be pinned by queries,
+	 * oldest first. Only used by the thread appending.
+	 */
+	private final Deque<Snapshot> replaced = new ArrayDeque<>();
+
+	/**
+	 * Every transaction appended so far, in order. Shared with snapshots, which
+	 * only read up to their own size, so it is written in place until it has to
+	 * grow.
+	 */
+	private Transaction[] transactions = new Transaction[16];
+
+	/**
+	 * When every {@link Snapshot#TIME_INDEX_INTERVAL}th transaction was created,
+	 * in seconds since the epoch. Shared with snapshots like
+	 * {@link #transactions}.
+	 */
+	private long[] timeIndex = new long[1];
+
+	/**
+	 * ID of the account with each ordinal, in the order accounts were first seen.
+	 * Shared with snapshots like {@link #transactions}.
+	 */
+	private String[] accountIds = new String[16];
+
+	/**
+	 * Ordinal of each account, keyed by account ID. Only used by the thread
+	 * appending.
+	 */
+	private final Map<String, Integer> accountOrdinals = new HashMap<>();
+
+	/**
+	 * Latest version of each account's index, keyed by account ID.
+	 */
+	private final Map<String, AccountIndex> accounts = new ConcurrentHashMap<>();
+
+	/**
+	 * IDs of accounts whose index still has older versions linked to it. Only used
+	 * by the thread appending.
+	 */
+	private final Set<String> accountsWithHistory = new HashSet<>();
+
+	/**
+	 * Transactions cancelled by a reversal after them, keyed by the ID of the
+	 * transactions cancelled.
+	 */
+	private final Map<String, Snapshot.Cancellation> cancellations = new ConcurrentHashMap<>();
+
+	/**
+	 * Transactions not yet reversed keyed by transaction ID, so a reversal can find
+	 * the payment it cancels. Only used by the thread appending.
+	 */
+	private final Map<String, Transaction> transactionsById = new HashMap<>();
+
+	/**
+	 * Further transactions not yet reversed with the same ID as one in
+	 * {@link #transactionsById}, in order, keyed by that ID. Only used by the
+	 * thread appending.
+	 */
+	private final Map<String, List<Transaction>> duplicatesById = new HashMap<>();
+
+	/**
+	 * Number of an account's transactions between balance checkpoints.
+	 */
+	private final int checkpointInterval;
+
+	/**
+	 * Standing queries to update as transactions are appended. Guarded by
+	 * <code>this</code>.
+	 */
+	private final StandingQueries standingQueries = new StandingQueries();
 
 	/**
 	 * @param transactions data to initialise the service with
 	 */
 	public AccountData(final List<Transaction> transactions) {
-		this.transactions = transactions;
+		this(transactions, DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * @param linked data to initialise the service with: the transactions accepted
+	 *               by {@link TransactionLinker}
+	 */
+	public AccountData(final LinkedTransactions linked) {
+		this(linked.getTransactions(), DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * @param transactions       data to initialise the service with
+	 * @param checkpointInterval number of an account's transactions between
+	 *                           balance checkpoints
+	 */
+	AccountData(final List<Transaction> transactions, final int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+		this.current = new AtomicReference<>(
+				new Snapshot(0, this.transactions, 0, timeIndex, accountIds, accounts, cancellations));
+		append(transactions);
+	}
+
+	/**
+	 * Add transactions to the end of the data being queried. Queries already
+	 * running carry on with the data as it was; queries started after this returns
+	 * see the whole batch.
+	 * 
+	 * @param batch transactions recorded after all those already held, in order
+	 */
+	public synchronized void append(final List<Transaction> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		Snapshot latest = current.get();
+		int size = latest.size();
+		if (size + batch.size() > transactions.length) {
+			transactions = Arrays.copyOf(transactions, Math.max(transactions.length * 2, size + batch.size()));
+		}
+		int timeIndexSize = (size + batch.size() + Snapshot.TIME_INDEX_INTERVAL - 1) / Snapshot.TIME_INDEX_INTERVAL;
+		if (timeIndexSize > timeIndex.length) {
+			timeIndex = Arrays.copyOf(timeIndex, Math.max(timeIndex.length * 2, timeIndexSize));
+		}
+
+		// Build the next version of each account touched, out of sight of queries.
+		Map<String, AccountIndex.Editor> editors = new HashMap<>();
+		for (Transaction transaction : batch) {
+			add(transaction, size++, editors);
+		}
+
+		// Install the new versions, linked to those older snapshots need, then
+		// publish the snapshot that can see them.
+		long epoch = latest.getEpoch() + 1;
+		editors.forEach((accountId, editor) -> {
+			if (accounts.put(accountId, editor.publish(epoch)) != null) {
+				accountsWithHistory.add(accountId);
+			}
+		});
+		current.set(new Snapshot(epoch, transactions, size, timeIndex, accountIds, accounts, cancellations));
+		replaced.addLast(latest);
+		forgetUnpinnedVersions(epoch);
+		standingQueries.push();
+	}
+
+	/**
+	 * Hold and index one transaction. Only called while appending.
+	 * 
+	 * @param transaction recorded after all those already held
+	 * @param position    position of the transaction in {@link #transactions}
+	 * @param editors     next version of each account touched so far in this
+	 *                    batch, keyed by account ID
+	 */
+	private void add(final Transaction transaction, final int position,
+			final Map<String, AccountIndex.Editor> editors) {
+		transactions[position] = transaction;
+		if (position % Snapshot.TIME_INDEX_INTERVAL == 0) {
+			timeIndex[position / Snapshot.TIME_INDEX_INTERVAL] = Snapshot.timeIndexKey(transaction.getCreatedAt());
+		}
+		int from = ordinalOf(transaction.getFromAccountId());
+		int to = ordinalOf(transaction.getToAccountId());
+		editor(transaction.getFromAccountId(), editors).add(transaction, to);
+		if (to != from) {
+			editor(transaction.getToAccountId(), editors).add(transaction, from);
+		}
+		standingQueries.added(transaction);
+		if (transaction.getTransactionType().equals(REVERSAL)) {
+			// Every transaction with the ID reversed held before this and not yet
+			// reversed, duplicates included, as the row filters see it.
+			Transaction original = transactionsById.remove(transaction.getRelatedTransaction());
+			if (original != null) {
+				cancel(original, position, editors);
+				List<Transaction> duplicates = duplicatesById.remove(transaction.getRelatedTransaction());
+				if (duplicates != null) {
+					duplicates.forEach(duplicate -> cancel(duplicate, position, editors));
+				}
+			}
+		}
+		if (transactionsById.putIfAbsent(transaction.getTransactionId(), transaction) != null) {
+			duplicatesById.computeIfAbsent(transaction.getTransactionId(), id -> new ArrayList<>()).add(transaction);
+		}
+	}
+
+	/**
+	 * Cancel a transaction held before a reversal of it. Only called while
+	 * appending.
+	 * 
+	 * @param original transaction reversed, not yet cancelled
+	 * @param reversal position of the reversal in {@link #transactions}
+	 * @param editors  next version of each account touched so far in this batch,
+	 *                 keyed by account ID
+	 */
+	private void cancel(final Transaction original, final int reversal,
+			final Map<String, AccountIndex.Editor> editors) {
+		cancellations.put(original.getTransactionId(), new Snapshot.Cancellation(original, reversal,
+				cancellations.get(original.getTransactionId())));
+		// Repair the balance checkpoints that counted the payment now reversed.
+		if (!original.getTransactionType().equals(REVERSAL)) {
+			editor(original.getFromAccountId(), editors).cancel(original);
+			if (!original.getToAccountId().equals(original.getFromAccountId())) {
+				editor(original.getToAccountId(), editors).cancel(original);
+			}
+			standingQueries.cancelled(original);
+		}
+	}
+
+	/**
+	 * @param accountId ID of an account
+	 * @return the account's ordinal, assigned if it is new
+	 */
+	private int ordinalOf(final String accountId) {
+		Integer ordinal = accountOrdinals.get(accountId);
+		if (ordinal != null) {
+			return ordinal;
+		}
+		int next = accountOrdinals.size();
+		if (next == accountIds.length) {
+			accountIds = Arrays.copyOf(accountIds, next * 2);
+		}
+		accountIds[next] = accountId;
+		accountOrdinals.put(accountId, next);
+		return next;
+	}
+
+	/**
+	 * @param accountId ID of an account
+	 * @param editors   next version of each account touched so far in this batch,
+	 *                  keyed by account ID
+	 * @return editor for the next version of the account's index, created if need
+	 *         be
+	 */
+	private AccountIndex.Editor editor(final String accountId, final Map<String, AccountIndex.Editor> editors) {
+		return editors.computeIfAbsent(accountId, id -> {
+			AccountIndex latest = accounts.get(id);
+			return latest == null ? AccountIndex.create(id, checkpointInterval) : latest.edit();
+		});
+	}
+
+	/**
+	 * Register a standing query, whose result is pushed to <code>listener</code>
+	 * now and again whenever appending transactions changes it. Results are pushed
+	 * on the thread appending, once the batch that changed them can be seen by
+	 * other queries, so listeners should be quick; to receive them asynchronously,
+	 * pass the <code>submit</code> method of a
+	 * {@link java.util.concurrent.SubmissionPublisher}.
+	 * 
+	 * @param query    account and window
+	 * @param listener receives the result of the query each time it changes
+	 * @return registration, to close when updates are no longer wanted
+	 */
+	public synchronized StandingQuery subscribe(final StandingQueryInput query,
+			final Consumer<RelativeBalanceResult> listener) {
+		StandingQuery standingQuery = new StandingQuery(this, query, listener);
+		Snapshot snapshot = current.get();
+		AccountIndex account = snapshot.account(query.getAccountId());
+		if (account != null) {
+			// Start from the payments already in the window.
+			LocalDateTime from = query.isSliding()
+					? snapshot.getLastCreatedAt().minus(query.getWindow()).plusNanos(1)
+					: query.getFrom();
+			LocalDateTime to = query.isSliding() ? LocalDateTime.MAX : query.getTo();
+			for (Transaction transaction : account.getTransactions(from, to)) {
+				if (!transaction.getTransactionType().equals(REVERSAL) && snapshot.isCurrent(transaction)) {
+					standingQuery.include(transaction);
+				}
+			}
+		}
+		standingQueries.register(standingQuery);
+		standingQuery.push();
+		return standingQuery;
+	}
+
+	/**
+	 * @param standingQuery query to stop updating
+	 */
+	synchronized void unsubscribe(final StandingQuery standingQuery) {
+		standingQueries.unregister(standingQuery);
+	}
+
+	/**
+	 * Retire replaced snapshots no query has pinned, and unlink account index
+	 * versions that only they could see.
+	 * 
+	 * @param latestEpoch epoch of the latest snapshot
+	 */
+	private void forgetUnpinnedVersions(final long latestEpoch) {
+		replaced.removeIf(Snapshot::retire);
+		long oldestPinnedEpoch = replaced.isEmpty() ? latestEpoch : replaced.peekFirst().getEpoch();
+		accountsWithHistory.removeIf(accountId -> accounts.get(accountId).forget(oldestPinnedEpoch));
+	}
+
+	/**
+	 * @return latest snapshot, pinned; callers must {@link Snapshot#unpin()} it
+	 *         when done
+	 */
+	private Snapshot pin() {
+		Snapshot snapshot = current.get();
+		while (!snapshot.pin()) {
+			snapshot = current.get();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return number of transactions held
+	 */
+	public int size() {
+		return current.get().size();
 	}
 
 	/**
@@ -32,9 +371,75 @@ public AccountData(final List<Transaction> transactions) {
 	 * @return result, which includes total amount and count of transactions.
 	 */
 	public RelativeBalanceResult retrieveRelativeBalance(final AccountQueryInput query) {
+		Snapshot snapshot = pin();
+		try {
+			return retrieveRelativeBalance(snapshot, query, QueryPlanner.plan(snapshot, query).getAccessPath());
+		} finally {
+			snapshot.unpin();
+		}
+	}
+
+	/**
+	 * @param query      input parameters to search: taking account number and date
+	 *                   range from <code>query</code>
+	 * @param accessPath how to find the transactions, whatever the planner would
+	 *                   choose
+	 * @return result, which includes total amount and count of transactions.
+	 */
+	RelativeBalanceResult retrieveRelativeBalance(final AccountQueryInput query, final AccessPath accessPath) {
+		Snapshot snapshot = pin();
+		try {
+			return retrieveRelativeBalance(snapshot, query, accessPath);
+		} finally {
+			snapshot.unpin();
+		}
+	}
+
+	/**
+	 * Explain how {@link #retrieveRelativeBalance(AccountQueryInput)} would answer
+	 * a query, for tuning.
+	 * 
+	 * @param query input parameters to search: taking account number and date range
+	 *              from <code>query</code>
+	 * @return access path that would be chosen, with the estimated cost of each
+	 *         path considered and the statistics behind the estimates
+	 */
+	public QueryPlan explain(final AccountQueryInput query) {
+		Snapshot snapshot = pin();
+		try {
+			return QueryPlanner.plan(snapshot, query);
+		} finally {
+			snapshot.unpin();
+		}
+	}
+
+	/**
+	 * @param snapshot   data to search, pinned
+	 * @param query      includes account ID and date range
+	 * @param accessPath how to find the transactions
+	 * @return result, which includes total amount and count of transactions.
+	 */
+	private static RelativeBalanceResult retrieveRelativeBalance(final Snapshot snapshot,
+			final AccountQueryInput query, final AccessPath accessPath) {
+
+		// Checkpoints count every reversal, so as-of queries walk the account index.
+		if (accessPath == AccessPath.CHECKPOINTS && query.getAsOf() == null) {
+			// Balance at the end of the range less balance at the start.
+			AccountIndex account = snapshot.account(query.getAccountId());
+			if (account == null) {
+				return new RelativeBalanceResult();
+			}
+			RelativeBalanceResult atStart = account.balanceBefore(query.getFrom(), snapshot::isCurrent);
+			RelativeBalanceResult atEnd = account.balanceBefore(query.getTo(), snapshot::isCurrent);
+			return new RelativeBalanceResult(
+					Cents.toDollars(Cents.of(atEnd.getAmount()) - Cents.of(atStart.getAmount())),
+					atEnd.getCountTransactions() - atStart.getCountTransactions());
+		}
 
 		// Get list of all transactions for the given account ID and date range.
-		List<Transaction> transactionsInDateRange = findTransactions(query);
+		List<Transaction> transactionsInDateRange = accessPath == AccessPath.FULL_SCAN
+				? findTransactions(snapshot, query)
+				: findAccountTransactions(snapshot, query);
 
 		// Reduce the list to a result: total relative amount and count of transactions.
 		return transactionsInDateRange.stream()//
@@ -46,37 +451,175 @@ public RelativeBalanceResult retrieveRelativeBalance(final AccountQueryInput que
 	}
 
 	/**
-	 * @param query includes account ID and date range
-	 * @return all transactions for the given account ID and date range
+	 * Relative balance for each bucket of a date range, found in one pass over the
+	 * account's transactions rather than a query per bucket.
+	 * 
+	 * @param query account, date range and bucket width
+	 * @return one result per bucket, in date order; the last bucket is cut short
+	 *         if the bucket width does not divide the date range evenly.
 	 */
-	private List<Transaction> findTransactions(final AccountQueryInput query) {
-		// Get list of all transactions for the given account ID and date range.
-		return transactions.stream()
-				// Get transactions in the date range.
-				.dropWhile(transaction -> transaction.getCreatedAt().isBefore(query.getFrom())) //
-				.takeWhile(transaction -> transaction.getCreatedAt().isBefore(query.getTo())) //
-				// Transaction must be to or from selected account.
-				.filter(transaction -> transaction.getFromAccountId().equals(query.getAccountId())
-						|| transaction.getToAccountId().equals(query.getAccountId()))//
-				// Ignore transactions that were reversed, even if reversed after to date.
-				.filter(this::isTransactionCurrent)
+	public List<RelativeBalanceResult> retrieveRelativeBalanceSeries(final BalanceSeriesQueryInput query) {
+		AccountQueryInput range = query.getRange();
+		Duration bucketWidth = query.getBucketWidth();
+		RelativeBalanceResult[] buckets = new RelativeBalanceResult[query.getBucketCount()];
+		Arrays.fill(buckets, new RelativeBalanceResult());
+
+		Snapshot snapshot = pin();
+		try {
+			AccountIndex account = snapshot.account(range.getAccountId());
+			List<Transaction> accountTransactions = account == null ? List.of()
+					: account.getTransactions(range.getFrom(), range.getEnd());
+			Predicate<Transaction> isCurrent = snapshot.currentAsOf(range.getAsOf());
+			for (Transaction transaction : accountTransactions) {
+				if (isCurrent.test(transaction)) {
+					int bucket = (int) Duration.between(range.getFrom(), transaction.getCreatedAt())
+							.dividedBy(bucketWidth);
+					buckets[bucket] = buckets[bucket].addTransaction(range, transaction);
+				}
+			}
+		} finally {
+			snapshot.unpin();
+		}
+		return List.of(buckets);
+	}
+
+	/**
+	 * Absolute balance of an account at a point in time: the nearest balance
+	 * checkpoint before it plus the few transactions since, rather than a sum over
+	 * the account's whole history.
+	 * <p>
+	 * Payments are cut off by when they were created, but every reversal known now
+	 * counts, however late; for the balance as it stood at the time, query with
+	 * {@link AccountQueryInput#getAsOf()} instead.
+	 * 
+	 * @param accountId ID of the account being examined
+	 * @param asOf      point in time
+	 * @return balance and count of all un-reversed transactions to or from the
+	 *         account created before <code>asOf</code>
+	 */
+	public RelativeBalanceResult retrieveBalanceAsOf(final String accountId, final LocalDateTime asOf) {
+		Snapshot snapshot = pin();
+		try {
+			AccountIndex account = snapshot.account(accountId);
+			return account == null ? new RelativeBalanceResult() : account.balanceBefore(asOf, snapshot::isCurrent);
+		} finally {
+			snapshot.unpin();
+		}
+	}
+
+	/**
+	 * Where the money went: net amount and count of un-reversed transactions
+	 * between an account and each of its counterparties over a date range.
+	 * 
+	 * @param query input parameters to search: taking account number and date range
+	 *              from <code>query</code>
+	 * @param limit largest number of counterparties wanted
+	 * @return up to <code>limit</code> counterparties, largest net amount either
+	 *         way first, then by account ID
+	 */
+	public List<CounterpartyTotal> retrieveCounterpartyBreakdown(final AccountQueryInput query, final int limit) {
+		return retrieveCounterpartyBreakdown(query, limit, DEFAULT_PARALLEL_BREAKDOWN_THRESHOLD);
+	}
+
+	/**
+	 * @param query             input parameters to search: taking account number
+	 *                          and date range from <code>query</code>
+	 * @param limit             largest number of counterparties wanted
+	 * @param parallelThreshold number of transactions in the date range from which
+	 *                          to aggregate in parallel
+	 * @return up to <code>limit</code> counterparties, largest net amount either
+	 *         way first, then by account ID
+	 */
+	List<CounterpartyTotal> retrieveCounterpartyBreakdown(final AccountQueryInput query, final int limit,
+			final int parallelThreshold) {
+		Snapshot snapshot = pin();
+		try {
+			AccountIndex account = snapshot.account(query.getAccountId());
+			if (account == null) {
+				return List.of();
+			}
+			int start = account.firstAtOrAfter(query.getFrom());
+			int end = Math.max(start, account.firstAtOrAfter(query.getEnd()));
+			Predicate<Transaction> isCurrent = snapshot.currentAsOf(query.getAsOf());
+			CounterpartyTotals totals;
+			if (end - start < parallelThreshold) {
+				totals = aggregateCounterparties(account, start, end, isCurrent);
+			} else {
+				// One task per chunk, each with its own table, merged at the end.
+				int chunks = ForkJoinPool.getCommonPoolParallelism() * 4;
+				int chunkSize = (end - start + chunks - 1) / chunks;
+				totals = IntStream.range(0, chunks).parallel()//
+						.mapToObj(chunk -> aggregateCounterparties(account, start + chunk * chunkSize,
+								Math.min(end, start + (chunk + 1) * chunkSize), isCurrent))//
+						.reduce(CounterpartyTotals::merge)//
+						.orElseGet(CounterpartyTotals::new);
+			}
+			return totals.top(limit, snapshot::accountIdOf);
+		} finally {
+			snapshot.unpin();
+		}
+	}
+
+	/**
+	 * @param account   index of the account's transactions in a pinned snapshot
+	 * @param start     position of the first transaction to aggregate
+	 * @param end       position after the last transaction to aggregate
+	 * @param isCurrent true for transactions that have not been reversed
+	 * @return net amount and count of un-reversed transactions per counterparty
+	 */
+	private static CounterpartyTotals aggregateCounterparties(final AccountIndex account, final int start,
+			final int end, final Predicate<Transaction> isCurrent) {
+		CounterpartyTotals totals = new CounterpartyTotals();
+		String accountId = account.getAccountId();
+		for (int index = start; index < end; index++) {
+			Transaction transaction = account.get(index);
+			// Same exclusions as the relative balance: reversals and what they reversed.
+			if (!transaction.getTransactionType().equals(REVERSAL) && isCurrent.test(transaction)) {
+				totals.add(account.counterpartyOf(index), accountId.equals(transaction.getToAccountId())
+						? transaction.getAmount()
+						: -transaction.getAmount());
+			}
+		}
+		return totals;
+	}
+
+	/**
+	 * @param snapshot data to search
+	 * @param query    includes account ID and date range
+	 * @return all transactions for the given account ID and date range, found from
+	 *         the account's own index
+	 */
+	private static List<Transaction> findAccountTransactions(final Snapshot snapshot,
+			final AccountQueryInput query) {
+		AccountIndex account = snapshot.account(query.getAccountId());
+		if (account == null) {
+			return List.of();
+		}
+		return account.getTransactions(query.getFrom(), query.getEnd()).stream()
+				// Ignore transactions that were reversed, even if reversed after to date,
+				// unless reversed at or after the as-of time.
+				.filter(snapshot.currentAsOf(query.getAsOf()))
 				// Get them all in a list.
 				.collect(Collectors.toList());
 	}
 
 	/**
-	 * @param transaction that may or may not have been reversed
-	 * @return true if we should consider the transaction; false otherwise e.g. it
-	 *         was reversed.
+	 * @param snapshot data to search
+	 * @param query    includes account ID and date range
+	 * @return all transactions for the given account ID and date range
 	 */
-	private boolean isTransactionCurrent(final Transaction transaction) {
-		// Consider transactions from this transaction onwards.
-		return transactions.subList(transactions.indexOf(transaction), transactions.size() - 1).stream()
-				// Look for transactions that reverse the one being considered.
-				.filter(tx2 -> tx2.getTransactionType().equals(REVERSAL))
-				.filter(tx2 -> tx2.getRelatedTransaction().equals(transaction.getTransactionId()))
-				// Keep transaction if we find no reversal.
-				.findFirst().isEmpty();
+	private static List<Transaction> findTransactions(final Snapshot snapshot, final AccountQueryInput query) {
+		// Get list of all transactions for the given account ID and date range, found
+		// with the sparse time index.
+		return snapshot.getTransactions(query.getFrom(), query.getEnd()).stream()
+				// Transaction must be to or from selected account.
+				.filter(transaction -> transaction.getFromAccountId().equals(query.getAccountId())
+						|| transaction.getToAccountId().equals(query.getAccountId()))//
+				// Ignore transactions that were reversed, even if reversed after to date,
+				// unless reversed at or after the as-of time.
+				.filter(snapshot.currentAsOf(query.getAsOf()))
+				// Get them all in a list.
+				.collect(Collectors.toList());
 	}
 
 }
@@ -0,0 +1,253 @@
+package org.rob.bank.service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.rob.bank.model.Transaction;
+import org.rob.bank.service.model.AccountQueryInput;
+import org.rob.bank.service.model.LoadProgress;
+import org.rob.bank.service.model.RelativeBalanceResult;
+
+/**
+ * Loads transactions into an {@link AccountData} on a background thread,
+ * answering queries while the load is still running.
+ * <p>
+ * Transactions are recorded in order, so once a transaction created at or after
+ * a query's <code>to</code> date has been loaded, every transaction in the
+ * query's date range has been loaded too. Such queries are answered straight
+ * away, but flagged as provisional until loading completes because a reversal
+ * further on in the file may yet cancel one of them. Other queries wait for
+ * loading to reach their <code>to</code> date.
+ */
+public final class AccountDataLoader {
+
+	/**
+	 * How many transactions are read before they are made visible to queries, by
+	 * default.
+	 */
+	private static final int DEFAULT_BATCH_SIZE = 1_000;
+
+	/**
+	 * Where transactions are read from.
+	 */
+	@FunctionalInterface
+	public interface TransactionSource {
+
+		/**
+		 * @param consumer receives each transaction, in the order they were recorded
+		 * @throws IOException if the transactions cannot be read
+		 */
+		void forEach(Consumer<Transaction> consumer) throws IOException;
+	}
+
+	/**
+	 * Where transactions are read from.
+	 */
+	private final TransactionSource source;
+
+	/**
+	 * Told about progress after each batch is loaded and when loading ends, before
+	 * queries waiting on that progress are released.
+	 */
+	private final Consumer<LoadProgress> progressListener;
+
+	/**
+	 * How many transactions are read before they are made visible to queries.
+	 */
+	private final int batchSize;
+
+	/**
+	 * Transactions loaded so far.
+	 */
+	private final AccountData accountData = new AccountData(List.of());
+
+	/**
+	 * Guards progress fields below; notified each time they change.
+	 */
+	private final Object monitor = new Object();
+
+	/**
+	 * How far the load has got.
+	 */
+	private LoadProgress progress = new LoadProgress(0, null, false);
+
+	/**
+	 * Why loading failed, if it did.
+	 */
+	private IOException failure;
+
+	/**
+	 * @param csvFilePath      comma separated value file containing transaction
+	 *                         data
+	 * @param progressListener told about progress as loading proceeds
+	 */
+	public AccountDataLoader(final String csvFilePath, final Consumer<LoadProgress> progressListener) {
+		this(consumer -> TransactionCsvReader.readFromFile(csvFilePath, consumer), progressListener);
+	}
+
+	/**
+	 * @param source           where transactions are read from
+	 * @param progressListener told about progress as loading proceeds
+	 */
+	public AccountDataLoader(final TransactionSource source, final Consumer<LoadProgress> progressListener) {
+		this(source, progressListener, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param source           where transactions are read from
+	 * @param progressListener told about progress as loading proceeds
+	 * @param batchSize        how many transactions are read before they are made
+	 *                         visible to queries
+	 */
+	AccountDataLoader(final TransactionSource source, final Consumer<LoadProgress> progressListener,
+			final int batchSize) {
+		this.source = source;
+		this.progressListener = progressListener;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Start loading transactions on a background thread.
+	 */
+	public void start() {
+		Thread loader = new Thread(this::load, "transaction-loader");
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	/**
+	 * @return how far the load has got
+	 */
+	public LoadProgress getProgress() {
+		synchronized (monitor) {
+			return progress;
+		}
+	}
+
+	/**
+	 * Wait for every transaction to be loaded.
+	 *
+	 * @param timeout how long to wait
+	 * @param unit    unit of <code>timeout</code>
+	 * @return service holding every transaction
+	 * @throws IOException          if loading failed
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws TimeoutException     if loading did not finish in time
+	 */
+	public AccountData awaitLoaded(final long timeout, final TimeUnit unit)
+			throws IOException, InterruptedException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (monitor) {
+			while (!progress.isComplete()) {
+				awaitChange(deadline);
+			}
+			return accountData;
+		}
+	}
+
+	/**
+	 * @param query   input parameters to search: taking account number and date
+	 *                range from <code>query</code>
+	 * @param timeout how long to wait for loading to reach the end of the date
+	 *                range
+	 * @param unit    unit of <code>timeout</code>
+	 * @return result, which includes total amount and count of transactions;
+	 *         provisional if loading has not finished yet.
+	 * @throws IOException          if loading failed
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws TimeoutException     if loading did not reach the end of the date
+	 *                              range in time
+	 */
+	public RelativeBalanceResult retrieveRelativeBalance(final AccountQueryInput query, final long timeout,
+			final TimeUnit unit) throws IOException, InterruptedException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		boolean complete;
+		synchronized (monitor) {
+			while (!progress.isComplete() && !covers(progress.getHighWaterMark(), query)) {
+				awaitChange(deadline);
+			}
+			complete = progress.isComplete();
+		}
+		RelativeBalanceResult result = accountData.retrieveRelativeBalance(query);
+		return complete ? result : result.toProvisional();
+	}
+
+	/**
+	 * @param highWaterMark created date of the last transaction loaded
+	 * @param query         date range being searched
+	 * @return true if every transaction in the date range has been loaded
+	 */
+	private static boolean covers(final LocalDateTime highWaterMark, final AccountQueryInput query) {
+		return highWaterMark != null && !highWaterMark.isBefore(query.getTo());
+	}
+
+	/**
+	 * Wait, holding {@link #monitor}, for progress to change.
+	 *
+	 * @param deadline {@link System#nanoTime()} to give up at
+	 * @throws IOException          if loading failed
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws TimeoutException     if the deadline passed
+	 */
+	private void awaitChange(final long deadline) throws IOException, InterruptedException, TimeoutException {
+		if (failure != null) {
+			throw failure;
+		}
+		long remaining = deadline - System.nanoTime();
+		if (remaining <= 0) {
+			throw new TimeoutException("Transactions still loading: " + progress);
+		}
+		TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+	}
+
+	/**
+	 * Read every transaction from the source, publishing them in batches.
+	 */
+	private void load() {
+		List<Transaction> batch = new ArrayList<>(batchSize);
+		try {
+			source.forEach(transaction -> {
+				batch.add(transaction);
+				if (batch.size() == batchSize) {
+					publish(batch, false);
+					batch.clear();
+				}
+			});
+			publish(batch, true);
+		} catch (IOException | RuntimeException e) {
+			synchronized (monitor) {
+				failure = e instanceof IOException ? (IOException) e
+						: new IOException("Unable to parse transactions.", e);
+				monitor.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Make a batch of transactions visible to queries and report progress.
+	 *
+	 * @param batch    transactions read since the last batch
+	 * @param complete true if this is the last batch
+	 */
+	private void publish(final List<Transaction> batch, final boolean complete) {
+		accountData.append(batch);
+		// Only this thread changes progress, so it can be read without the lock here.
+		LocalDateTime highWaterMark = batch.isEmpty() ? progress.getHighWaterMark()
+				: batch.get(batch.size() - 1).getCreatedAt();
+		LoadProgress next = new LoadProgress(progress.getTransactionsLoaded() + batch.size(), highWaterMark,
+				complete);
+		// Tell the listener before releasing waiters, so it has heard of the load
+		// completing by the time anyone waiting for that is released.
+		progressListener.accept(next);
+		synchronized (monitor) {
+			progress = next;
+			monitor.notifyAll();
+		}
+	}
+
+}
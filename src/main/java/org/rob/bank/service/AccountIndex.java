@@ -0,0 +1,482 @@
+package org.rob.bank.service;
+
+import static org.rob.bank.model.TransactionType.REVERSAL;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.rob.bank.model.Transaction;
+import org.rob.bank.service.model.Cents;
+import org.rob.bank.service.model.RelativeBalanceResult;
+
+/**
+ * Transactions to or from one account, with a running balance checkpointed
+ * every few transactions so the balance at any point in time is a checkpoint
+ * plus a short scan.
+ * <p>
+ * Each instance is an immutable version of the index as of one epoch of
+ * {@link AccountData}. A new version is made with an {@link Editor} and linked
+ * to the version before it, so readers pinned to an older epoch can still find
+ * the version they should see. Versions share arrays: a new version writes only
+ * past the end of what older versions can see, and copies any array it has to
+ * change in place.
+ */
+final class AccountIndex {
+
+	/**
+	 * ID of the account indexed.
+	 */
+	private final String accountId;
+
+	/**
+	 * Number of transactions between checkpoints.
+	 */
+	private final int checkpointInterval;
+
+	/**
+	 * Epoch of {@link AccountData} this version was published in.
+	 */
+	private final long epoch;
+
+	/**
+	 * Version this one replaced, while readers may still need it.
+	 */
+	private volatile AccountIndex previous;
+
+	/**
+	 * Transactions to or from the account, in the order they were recorded. Only
+	 * the first {@link #size} belong to this version.
+	 */
+	private final Transaction[] transactions;
+
+	/**
+	 * Ordinal of the account on the other side of each transaction, in the same
+	 * order as {@link #transactions}.
+	 */
+	private final int[] counterparties;
+
+	/**
+	 * Number of transactions in this version.
+	 */
+	private final int size;
+
+	/**
+	 * Element <code>i</code> is the balance in cents of un-reversed payments among
+	 * the first <code>(i + 1) * checkpointInterval</code> transactions.
+	 */
+	private final long[] checkpointBalances;
+
+	/**
+	 * Element <code>i</code> is the count of un-reversed payments among the first
+	 * <code>(i + 1) * checkpointInterval</code> transactions.
+	 */
+	private final int[] checkpointCounts;
+
+	/**
+	 * Number of checkpoints in this version.
+	 */
+	private final int checkpointCount;
+
+	/**
+	 * Number of reversals in this version.
+	 */
+	private final int reversalCount;
+
+	/**
+	 * Balance in cents of all un-reversed payments in this version.
+	 */
+	private final long balance;
+
+	/**
+	 * Count of all un-reversed payments in this version.
+	 */
+	private final int count;
+
+	/**
+	 * @param editor changes making up this version
+	 * @param epoch  epoch this version is published in
+	 */
+	private AccountIndex(final Editor editor, final long epoch) {
+		this.accountId = editor.accountId;
+		this.checkpointInterval = editor.checkpointInterval;
+		this.epoch = epoch;
+		this.previous = editor.base;
+		this.transactions = editor.transactions;
+		this.counterparties = editor.counterparties;
+		this.size = editor.size;
+		this.checkpointBalances = editor.checkpointBalances;
+		this.checkpointCounts = editor.checkpointCounts;
+		this.checkpointCount = editor.checkpointCount;
+		this.reversalCount = editor.reversalCount;
+		this.balance = editor.balance;
+		this.count = editor.count;
+	}
+
+	/**
+	 * @param accountId          ID of the account indexed
+	 * @param checkpointInterval number of transactions between checkpoints
+	 * @return editor for the first version of an account's index
+	 */
+	static Editor create(final String accountId, final int checkpointInterval) {
+		return new Editor(accountId, checkpointInterval, null);
+	}
+
+	/**
+	 * @return editor for the next version of this index; only one may be in use
+	 *         at a time, and only on the latest version
+	 */
+	Editor edit() {
+		return new Editor(accountId, checkpointInterval, this);
+	}
+
+	/**
+	 * @param readEpoch epoch a reader is pinned to
+	 * @return version of the index as of <code>readEpoch</code>; null if the
+	 *         account had no transactions then
+	 */
+	AccountIndex asOf(final long readEpoch) {
+		AccountIndex version = this;
+		while (version != null && version.epoch > readEpoch) {
+			version = version.previous;
+		}
+		return version;
+	}
+
+	/**
+	 * Drop versions no reader can need any more.
+	 *
+	 * @param oldestPinnedEpoch oldest epoch any reader may be pinned to
+	 * @return true if this is the only version left
+	 */
+	boolean forget(final long oldestPinnedEpoch) {
+		AccountIndex version = asOf(oldestPinnedEpoch);
+		if (version != null) {
+			version.previous = null;
+		}
+		return previous == null;
+	}
+
+	/**
+	 * @return ID of the account indexed
+	 */
+	String getAccountId() {
+		return accountId;
+	}
+
+	/**
+	 * @return transactions to or from the account, in the order they were
+	 *         recorded
+	 */
+	List<Transaction> getTransactions() {
+		return Arrays.asList(transactions).subList(0, size);
+	}
+
+	/**
+	 * @param from start of date range, inclusive
+	 * @param to   end of date range, exclusive
+	 * @return transactions to or from the account in the date range, in the order
+	 *         they were recorded
+	 */
+	List<Transaction> getTransactions(final LocalDateTime from, final LocalDateTime to) {
+		int start = firstAtOrAfter(from);
+		return getTransactions().subList(start, Math.max(start, firstAtOrAfter(to)));
+	}
+
+	/**
+	 * @param index position of a transaction, from 0
+	 * @return the transaction
+	 */
+	Transaction get(final int index) {
+		return transactions[index];
+	}
+
+	/**
+	 * @param index position of a transaction, from 0
+	 * @return ordinal of the account on the other side of the transaction
+	 */
+	int counterpartyOf(final int index) {
+		return counterparties[index];
+	}
+
+	/**
+	 * @return number of transactions to or from the account
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return when the account's first transaction was created
+	 */
+	LocalDateTime getFirstCreatedAt() {
+		return transactions[0].getCreatedAt();
+	}
+
+	/**
+	 * @return when the account's latest transaction was created
+	 */
+	LocalDateTime getLastCreatedAt() {
+		return transactions[size - 1].getCreatedAt();
+	}
+
+	/**
+	 * @return number of those transactions that are reversals
+	 */
+	int getReversalCount() {
+		return reversalCount;
+	}
+
+	/**
+	 * @return number of transactions between checkpoints
+	 */
+	int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	/**
+	 * @param asOf      point in time
+	 * @param isCurrent true for transactions that have not been reversed
+	 * @return balance and count of un-reversed payments created before
+	 *         <code>asOf</code>
+	 */
+	RelativeBalanceResult balanceBefore(final LocalDateTime asOf, final Predicate<Transaction> isCurrent) {
+		int end = firstAtOrAfter(asOf);
+		int checkpoint = end / checkpointInterval;
+		long cents = checkpoint == 0 ? 0 : checkpointBalances[checkpoint - 1];
+		int included = checkpoint == 0 ? 0 : checkpointCounts[checkpoint - 1];
+		for (int index = checkpoint * checkpointInterval; index < end; index++) {
+			Transaction transaction = transactions[index];
+			if (!transaction.getTransactionType().equals(REVERSAL) && isCurrent.test(transaction)) {
+				cents += signedCents(accountId, transaction);
+				included++;
+			}
+		}
+		return new RelativeBalanceResult(Cents.toDollars(cents), included);
+	}
+
+	/**
+	 * @param from date to search for
+	 * @return index of the first transaction created at or after
+	 *         <code>from</code>; number of transactions if none
+	 */
+	int firstAtOrAfter(final LocalDateTime from) {
+		return firstAtOrAfter(transactions, size, from);
+	}
+
+	/**
+	 * @param transactions in the order they were recorded
+	 * @param size         number of <code>transactions</code> in use
+	 * @param from         date to search for
+	 * @return index of the first transaction created at or after
+	 *         <code>from</code>; <code>size</code> if none
+	 */
+	private static int firstAtOrAfter(final Transaction[] transactions, final int size, final LocalDateTime from) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (transactions[middle].getCreatedAt().isBefore(from)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param accountId   account the amount is relative to
+	 * @param transaction to or from the account
+	 * @return amount in cents received by the account; negative if paid out
+	 */
+	private static long signedCents(final String accountId, final Transaction transaction) {
+		long cents = Cents.of(transaction.getAmount());
+		return accountId.equals(transaction.getToAccountId()) ? cents : -cents;
+	}
+
+	/**
+	 * Builds the next version of an index. Only the thread appending to
+	 * {@link AccountData} uses one.
+	 */
+	static final class Editor {
+
+		/**
+		 * ID of the account indexed.
+		 */
+		private final String accountId;
+
+		/**
+		 * Number of transactions between checkpoints.
+		 */
+		private final int checkpointInterval;
+
+		/**
+		 * Version being replaced; null if none.
+		 */
+		private final AccountIndex base;
+
+		/**
+		 * Transactions, shared with {@link #base} until they have to grow.
+		 */
+		private Transaction[] transactions;
+
+		/**
+		 * Counterparty ordinals, shared with {@link #base} until they have to grow.
+		 */
+		private int[] counterparties;
+
+		/**
+		 * Number of transactions in use.
+		 */
+		private int size;
+
+		/**
+		 * Checkpoint balances in cents, shared with {@link #base} until changed in
+		 * place.
+		 */
+		private long[] checkpointBalances;
+
+		/**
+		 * Checkpoint counts, shared with {@link #base} until changed in place.
+		 */
+		private int[] checkpointCounts;
+
+		/**
+		 * Number of checkpoints in use.
+		 */
+		private int checkpointCount;
+
+		/**
+		 * True once the checkpoint arrays are this editor's own copy.
+		 */
+		private boolean checkpointsCopied;
+
+		/**
+		 * Number of reversals so far.
+		 */
+		private int reversalCount;
+
+		/**
+		 * Balance in cents of all un-reversed payments so far.
+		 */
+		private long balance;
+
+		/**
+		 * Count of all un-reversed payments so far.
+		 */
+		private int count;
+
+		/**
+		 * @param accountId          ID of the account indexed
+		 * @param checkpointInterval number of transactions between checkpoints
+		 * @param base               version being replaced; null if none
+		 */
+		private Editor(final String accountId, final int checkpointInterval, final AccountIndex base) {
+			this.accountId = accountId;
+			this.checkpointInterval = checkpointInterval;
+			this.base = base;
+			if (base == null) {
+				transactions = new Transaction[8];
+				counterparties = new int[8];
+				checkpointBalances = new long[8];
+				checkpointCounts = new int[8];
+				checkpointsCopied = true;
+			} else {
+				transactions = base.transactions;
+				counterparties = base.counterparties;
+				size = base.size;
+				checkpointBalances = base.checkpointBalances;
+				checkpointCounts = base.checkpointCounts;
+				checkpointCount = base.checkpointCount;
+				reversalCount = base.reversalCount;
+				balance = base.balance;
+				count = base.count;
+			}
+		}
+
+		/**
+		 * @param transaction  recorded after all those already indexed
+		 * @param counterparty ordinal of the account on the other side of the
+		 *                     transaction
+		 */
+		void add(final Transaction transaction, final int counterparty) {
+			if (size == transactions.length) {
+				transactions = Arrays.copyOf(transactions, size * 2);
+				counterparties = Arrays.copyOf(counterparties, size * 2);
+			}
+			counterparties[size] = counterparty;
+			transactions[size++] = transaction;
+			if (transaction.getTransactionType().equals(REVERSAL)) {
+				reversalCount++;
+			} else {
+				balance += signedCents(accountId, transaction);
+				count++;
+			}
+			if (size % checkpointInterval == 0) {
+				if (checkpointCount == checkpointBalances.length) {
+					checkpointBalances = Arrays.copyOf(checkpointBalances, checkpointCount * 2);
+					checkpointCounts = Arrays.copyOf(checkpointCounts, checkpointCount * 2);
+					checkpointsCopied = true;
+				}
+				checkpointBalances[checkpointCount] = balance;
+				checkpointCounts[checkpointCount] = count;
+				checkpointCount++;
+			}
+		}
+
+		/**
+		 * Take a payment back out of the balance, and out of every checkpoint taken
+		 * since it, because it has been reversed.
+		 *
+		 * @param original payment already indexed here that has just been reversed
+		 */
+		void cancel(final Transaction original) {
+			int position = positionOf(original);
+			if (position < 0) {
+				return;
+			}
+			long cents = signedCents(accountId, original);
+			balance -= cents;
+			count--;
+			int firstCheckpoint = position / checkpointInterval;
+			if (firstCheckpoint < checkpointCount && !checkpointsCopied) {
+				// Older versions still read these checkpoints as they were.
+				checkpointBalances = checkpointBalances.clone();
+				checkpointCounts = checkpointCounts.clone();
+				checkpointsCopied = true;
+			}
+			for (int checkpoint = firstCheckpoint; checkpoint < checkpointCount; checkpoint++) {
+				checkpointBalances[checkpoint] -= cents;
+				checkpointCounts[checkpoint]--;
+			}
+		}
+
+		/**
+		 * @param epoch epoch to publish the new version in
+		 * @return new version, linked to the one it replaces
+		 */
+		AccountIndex publish(final long epoch) {
+			return new AccountIndex(this, epoch);
+		}
+
+		/**
+		 * @param transaction indexed here
+		 * @return index of <code>transaction</code>, or -1 if not indexed here
+		 */
+		private int positionOf(final Transaction transaction) {
+			// Binary search finds the first with the same created date; the transaction
+			// itself is among those that follow.
+			int index = firstAtOrAfter(transactions, size, transaction.getCreatedAt());
+			while (index < size && transactions[index].getCreatedAt().equals(transaction.getCreatedAt())) {
+				if (transactions[index] == transaction) {
+					return index;
+				}
+				index++;
+			}
+			return -1;
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+package org.rob.bank.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntFunction;
+
+import org.rob.bank.service.model.Cents;
+import org.rob.bank.service.model.CounterpartyTotal;
+
+/**
+ * Net amount and count of transactions per counterparty, keyed by account
+ * ordinal in an open addressing hash table of primitive arrays, so adding a
+ * transaction neither boxes nor allocates.
+ * <p>
+ * Not thread safe: parallel aggregation gives each task its own and
+ * {@link #merge(CounterpartyTotals) merges} them.
+ */
+final class CounterpartyTotals {
+
+	/**
+	 * Key of an empty slot.
+	 */
+	private static final int EMPTY = -1;
+
+	/**
+	 * Orders totals from the largest net amount either way to the smallest, then by
+	 * account ID.
+	 */
+	static final Comparator<CounterpartyTotal> LARGEST_FIRST = Comparator
+			.comparingDouble((CounterpartyTotal total) -> Math.abs(total.getAmount())).reversed()
+			.thenComparing(CounterpartyTotal::getCounterpartyAccountId);
+
+	/**
+	 * Counterparty ordinal in each slot, or {@link #EMPTY}.
+	 */
+	private int[] keys;
+
+	/**
+	 * Net amount in cents for the counterparty in each slot, so totals are the
+	 * same however the transactions were split between parallel tasks.
+	 */
+	private long[] cents;
+
+	/**
+	 * Count of transactions for the counterparty in each slot.
+	 */
+	private int[] counts;
+
+	/**
+	 * Number of slots in use.
+	 */
+	private int size;
+
+	/**
+	 * Creates an empty table.
+	 */
+	CounterpartyTotals() {
+		allocate(16);
+	}
+
+	/**
+	 * @param counterparty ordinal of the account on the other side
+	 * @param amount       signed amount of one transaction
+	 */
+	void add(final int counterparty, final double amount) {
+		add(counterparty, Cents.of(amount), 1);
+	}
+
+	/**
+	 * @param other totals to add to these
+	 * @return these totals
+	 */
+	CounterpartyTotals merge(final CounterpartyTotals other) {
+		for (int slot = 0; slot < other.keys.length; slot++) {
+			if (other.keys[slot] != EMPTY) {
+				add(other.keys[slot], other.cents[slot], other.counts[slot]);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @param limit      largest number of counterparties wanted
+	 * @param accountIds ID of the account with each ordinal
+	 * @return up to <code>limit</code> totals, largest net amount either way first
+	 */
+	List<CounterpartyTotal> top(final int limit, final IntFunction<String> accountIds) {
+		// Keep the largest seen so far, smallest of them at the head to be evicted.
+		PriorityQueue<CounterpartyTotal> largest = new PriorityQueue<>(LARGEST_FIRST.reversed());
+		for (int slot = 0; slot < keys.length && limit > 0; slot++) {
+			if (keys[slot] != EMPTY) {
+				largest.add(new CounterpartyTotal(accountIds.apply(keys[slot]), Cents.toDollars(cents[slot]),
+						counts[slot]));
+				if (largest.size() > limit) {
+					largest.poll();
+				}
+			}
+		}
+		List<CounterpartyTotal> top = new ArrayList<>(largest);
+		top.sort(LARGEST_FIRST);
+		return top;
+	}
+
+	/**
+	 * @param counterparty ordinal of the account on the other side
+	 * @param amount       signed amount in cents to add
+	 * @param count        number of transactions to add
+	 */
+	private void add(final int counterparty, final long amount, final int count) {
+		int slot = slotOf(counterparty);
+		if (keys[slot] == EMPTY) {
+			if ((size + 1) * 2 > keys.length) {
+				// Keep the table at most half full so probes stay short.
+				resize();
+				slot = slotOf(counterparty);
+			}
+			keys[slot] = counterparty;
+			size++;
+		}
+		cents[slot] += amount;
+		counts[slot] += count;
+	}
+
+	/**
+	 * @param counterparty ordinal of an account
+	 * @return slot holding the account, or the empty slot where it belongs
+	 */
+	private int slotOf(final int counterparty) {
+		int mask = keys.length - 1;
+		// Ordinals are dense, so spread them before masking.
+		int hash = counterparty * 0x9E3779B9;
+		int slot = (hash ^ hash >>> 16) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != counterparty) {
+			slot = slot + 1 & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Double the number of slots, re-inserting every counterparty.
+	 */
+	private void resize() {
+		int[] oldKeys = keys;
+		long[] oldCents = cents;
+		int[] oldCounts = counts;
+		allocate(oldKeys.length * 2);
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (oldKeys[slot] != EMPTY) {
+				int newSlot = slotOf(oldKeys[slot]);
+				keys[newSlot] = oldKeys[slot];
+				cents[newSlot] = oldCents[slot];
+				counts[newSlot] = oldCounts[slot];
+			}
+		}
+	}
+
+	/**
+	 * @param capacity number of slots; a power of two
+	 */
+	private void allocate(final int capacity) {
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		cents = new long[capacity];
+		counts = new int[capacity];
+	}
+
+}
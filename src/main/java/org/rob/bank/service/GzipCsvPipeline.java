@@ -0,0 +1,195 @@
+package org.rob.bank.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import org.rob.bank.model.Transaction;
+
+/**
+ * Read {@link Transaction}s from a gzipped comma separated value file,
+ * decompressing on one thread while other threads parse.
+ * <p>
+ * The decompressing thread cuts the file into blocks of whole lines and hands
+ * each to a pool of parser threads. The parsed blocks are queued in file order
+ * on a bounded queue, so transactions reach the consumer in the order they were
+ * recorded and no more than a few blocks are held in memory at once, however
+ * large the file is.
+ */
+final class GzipCsvPipeline {
+
+	/**
+	 * Size of the blocks handed to parser threads, by default.
+	 */
+	static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * Marks the end of the queue of parsed blocks.
+	 */
+	private static final Future<List<Transaction>> END = CompletableFuture.completedFuture(List.of());
+
+	/**
+	 * Line separator.
+	 */
+	private static final byte NEW_LINE = '\n';
+
+	/**
+	 * Not for instantiation.
+	 */
+	private GzipCsvPipeline() {
+	}
+
+	/**
+	 * @param compressed gzipped comma separated value data, including a header
+	 *                   line
+	 * @param consumer   receives each {@link Transaction} in the same order in
+	 *                   which they appear in the data
+	 * @throws IOException if we cannot read or decompress the data
+	 */
+	static void read(final InputStream compressed, final Consumer<Transaction> consumer) throws IOException {
+		read(compressed, consumer, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param compressed gzipped comma separated value data, including a header
+	 *                   line
+	 * @param consumer   receives each {@link Transaction} in the same order in
+	 *                   which they appear in the data
+	 * @param blockSize  number of bytes handed to each parser thread; grown if a
+	 *                   line is longer than this
+	 * @throws IOException if we cannot read or decompress the data
+	 */
+	static void read(final InputStream compressed, final Consumer<Transaction> consumer, final int blockSize)
+			throws IOException {
+		int parserCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		ExecutorService parsers = Executors.newFixedThreadPool(parserCount, runnable -> {
+			Thread parser = new Thread(runnable, "csv-parser");
+			parser.setDaemon(true);
+			return parser;
+		});
+		BlockingQueue<Future<List<Transaction>>> parsed = new ArrayBlockingQueue<>(parserCount * 2);
+		Thread decompressor = new Thread(() -> decompress(compressed, blockSize, parsers, parsed),
+				"csv-decompressor");
+		decompressor.setDaemon(true);
+		decompressor.start();
+		try {
+			for (Future<List<Transaction>> block = parsed.take(); block != END; block = parsed.take()) {
+				block.get().forEach(consumer);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading transactions.", ie);
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException("Unable to read transactions.", cause);
+		} finally {
+			decompressor.interrupt();
+			parsers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Decompress the data, queueing a parse of each block of whole lines in file
+	 * order, then {@link #END}; if anything fails, a failed block goes before
+	 * {@link #END} so the reader is never left waiting.
+	 *
+	 * @param compressed gzipped comma separated value data
+	 * @param blockSize  number of bytes handed to each parser thread
+	 * @param parsers    threads that parse blocks
+	 * @param parsed     where to queue parsed blocks; blocks when full
+	 */
+	private static void decompress(final InputStream compressed, final int blockSize,
+			final ExecutorService parsers, final BlockingQueue<Future<List<Transaction>>> parsed) {
+		Throwable failure = null;
+		try (InputStream in = new GZIPInputStream(compressed, blockSize)) {
+			byte[] buffer = new byte[blockSize];
+			int filled = 0;
+			boolean header = true;
+			boolean endOfFile = false;
+			while (!endOfFile) {
+				filled += in.readNBytes(buffer, filled, buffer.length - filled);
+				endOfFile = filled < buffer.length;
+				int end = endOfFile ? filled : lastNewLine(buffer, filled) + 1;
+				if (end == 0) {
+					if (!endOfFile) {
+						// A single line fills the buffer; make room for the rest of it.
+						buffer = Arrays.copyOf(buffer, buffer.length * 2);
+					}
+					continue;
+				}
+				byte[] block = Arrays.copyOf(buffer, end);
+				boolean skipHeader = header;
+				parsed.put(parsers.submit(() -> parse(block, skipHeader)));
+				System.arraycopy(buffer, end, buffer, 0, filled - end);
+				filled -= end;
+				header = false;
+			}
+		} catch (InterruptedException ie) {
+			// Reader has given up; nobody is waiting for the rest.
+			return;
+		} catch (Throwable t) {
+			// Whatever went wrong, the reader is waiting to hear of it.
+			failure = t;
+		}
+		try {
+			if (failure != null) {
+				parsed.put(CompletableFuture.failedFuture(failure));
+			}
+			parsed.put(END);
+		} catch (InterruptedException ie) {
+			// Reader has given up; nobody is waiting for the rest.
+		}
+	}
+
+	/**
+	 * @param buffer data
+	 * @param length number of bytes of <code>buffer</code> in use
+	 * @return index of the last new line in <code>buffer</code>, or -1 if none
+	 */
+	private static int lastNewLine(final byte[] buffer, final int length) {
+		int index = length - 1;
+		while (index >= 0 && buffer[index] != NEW_LINE) {
+			index--;
+		}
+		return index;
+	}
+
+	/**
+	 * @param block      whole lines of comma separated value data
+	 * @param skipHeader true if the first line is the header
+	 * @return {@link Transaction}s in the same order in which they appear in
+	 *         <code>block</code>
+	 */
+	private static List<Transaction> parse(final byte[] block, final boolean skipHeader) {
+		// Blocks are cut at new lines, which never occur inside a multi-byte UTF-8
+		// character, so each block decodes on its own.
+		String[] lines = new String(block, StandardCharsets.UTF_8).split("\n");
+		List<Transaction> transactions = new ArrayList<>(lines.length);
+		for (int index = skipHeader ? 1 : 0; index < lines.length; index++) {
+			if (!lines[index].isBlank()) {
+				transactions.add(TransactionCsvReader.fromSingleLine(lines[index]));
+			}
+		}
+		return transactions;
+	}
+
+}
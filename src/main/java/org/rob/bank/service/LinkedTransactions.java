@@ -0,0 +1,84 @@
+package org.rob.bank.service;
+
+import java.util.List;
+
+import org.rob.bank.model.Transaction;
+import org.rob.bank.service.model.IntegrityIssue;
+
+/**
+ * Transactions with every reversal already linked to the transaction it
+ * reverses, ready for {@link AccountData#AccountData(LinkedTransactions)}, and
+ * the integrity issues found while linking them. Made by
+ * {@link TransactionLinker}.
+ */
+public final class LinkedTransactions {
+
+	/**
+	 * Transactions accepted, in order.
+	 */
+	private final List<Transaction> transactions;
+
+	/**
+	 * For each accepted transaction, the position of the transaction it reverses
+	 * among those accepted; -1 if it is not a reversal or reverses nothing
+	 * accepted before it.
+	 */
+	private final int[] originals;
+
+	/**
+	 * Transactions left out because of an integrity issue, in order.
+	 */
+	private final List<Transaction> quarantined;
+
+	/**
+	 * Every integrity issue found, in order of the transactions they concern.
+	 */
+	private final List<IntegrityIssue> issues;
+
+	/**
+	 * @param transactions transactions accepted, in order
+	 * @param originals    position of the transaction each reverses; -1 if none
+	 * @param quarantined  transactions left out, in order
+	 * @param issues       every integrity issue found
+	 */
+	LinkedTransactions(final List<Transaction> transactions, final int[] originals,
+			final List<Transaction> quarantined, final List<IntegrityIssue> issues) {
+		this.transactions = transactions;
+		this.originals = originals;
+		this.quarantined = quarantined;
+		this.issues = issues;
+	}
+
+	/**
+	 * @return unmodifiable list of transactions accepted, in order
+	 */
+	public List<Transaction> getTransactions() {
+		return transactions;
+	}
+
+	/**
+	 * @return unmodifiable list of transactions left out because of an integrity
+	 *         issue, in order; empty unless quarantining
+	 */
+	public List<Transaction> getQuarantined() {
+		return quarantined;
+	}
+
+	/**
+	 * @return unmodifiable list of every integrity issue found, whether or not the
+	 *         transaction was quarantined
+	 */
+	public List<IntegrityIssue> getIssues() {
+		return issues;
+	}
+
+	/**
+	 * @param position position of an accepted transaction
+	 * @return position of the accepted transaction it reverses; -1 if it is not a
+	 *         reversal or reverses nothing accepted before it
+	 */
+	int originalPositionOf(final int position) {
+		return originals[position];
+	}
+
+}
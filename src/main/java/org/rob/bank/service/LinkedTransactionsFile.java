@@ -0,0 +1,200 @@
+package org.rob.bank.service;
+
+import static org.rob.bank.model.TransactionType.REVERSAL;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.rob.bank.model.Transaction;
+import org.rob.bank.model.TransactionType;
+
+/**
+ * Binary snapshot of {@link LinkedTransactions}, so a short-lived process can
+ * start from data that is already parsed and linked rather than from CSV.
+ * <p>
+ * Account IDs are written once each and referred to by ordinal; dates are
+ * written as seconds and nanoseconds so reading them needs no formatter; each
+ * reversal carries the position of the transaction it reverses. Integrity
+ * issues and quarantined transactions are not kept: a snapshot holds only
+ * transactions accepted.
+ */
+public final class LinkedTransactionsFile {
+
+	/**
+	 * File name suffix of snapshots.
+	 */
+	public static final String SUFFIX = ".snapshot";
+
+	/**
+	 * First bytes of every snapshot.
+	 */
+	private static final int MAGIC = 0x52424B53;
+
+	/**
+	 * Version of the layout written.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Size of the read and write buffers.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Fewest bytes an account ID takes: its length.
+	 */
+	private static final int MIN_ACCOUNT_BYTES = 2;
+
+	/**
+	 * Fewest bytes a transaction takes: every field but the ID's characters.
+	 */
+	private static final int MIN_TRANSACTION_BYTES = 31;
+
+	/**
+	 * Transaction types by ordinal.
+	 */
+	private static final TransactionType[] TYPES = TransactionType.values();
+
+	/**
+	 * Not for instantiation.
+	 */
+	private LinkedTransactionsFile() {
+	}
+
+	/**
+	 * @param linked transactions to write
+	 * @param file   where to write them
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(final LinkedTransactions linked, final Path file) throws IOException {
+		List<Transaction> transactions = linked.getTransactions();
+		Map<String, Integer> ordinals = new HashMap<>();
+		List<String> accountIds = new ArrayList<>();
+		for (Transaction transaction : transactions) {
+			for (String accountId : List.of(transaction.getFromAccountId(), transaction.getToAccountId())) {
+				if (ordinals.putIfAbsent(accountId, accountIds.size()) == null) {
+					accountIds.add(accountId);
+				}
+			}
+		}
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(accountIds.size());
+			for (String accountId : accountIds) {
+				out.writeUTF(accountId);
+			}
+			out.writeInt(transactions.size());
+			for (int position = 0; position < transactions.size(); position++) {
+				Transaction transaction = transactions.get(position);
+				out.writeUTF(transaction.getTransactionId());
+				out.writeInt(ordinals.get(transaction.getFromAccountId()));
+				out.writeInt(ordinals.get(transaction.getToAccountId()));
+				out.writeLong(transaction.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+				out.writeInt(transaction.getCreatedAt().getNano());
+				out.writeDouble(transaction.getAmount());
+				out.writeByte(transaction.getTransactionType().ordinal());
+				if (transaction.getTransactionType().equals(REVERSAL)) {
+					out.writeUTF(transaction.getRelatedTransaction());
+					out.writeInt(linked.originalPositionOf(position));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param file snapshot written by {@link #write(LinkedTransactions, Path)}
+	 * @return transactions linked and ready to query
+	 * @throws IOException if the file cannot be read, is not a snapshot or is
+	 *                     corrupt
+	 */
+	public static LinkedTransactions read(final Path file) throws IOException {
+		// Counts larger than the file could hold are corrupt, not worth allocating for.
+		long size = Files.size(file);
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(file + " is not a transaction snapshot this version can read.");
+			}
+			String[] accountIds = new String[checkIndex(file, "account count", in.readInt(),
+					size / MIN_ACCOUNT_BYTES + 1)];
+			for (int ordinal = 0; ordinal < accountIds.length; ordinal++) {
+				accountIds[ordinal] = in.readUTF();
+			}
+			int count = checkIndex(file, "transaction count", in.readInt(), size / MIN_TRANSACTION_BYTES + 1);
+			List<Transaction> transactions = new ArrayList<>(count);
+			int[] originals = new int[count];
+			for (int position = 0; position < count; position++) {
+				Transaction.TransactionBuilder transaction = Transaction.builder()//
+						.transactionId(in.readUTF())//
+						.fromAccountId(accountIds[checkIndex(file, "account", in.readInt(), accountIds.length)])//
+						.toAccountId(accountIds[checkIndex(file, "account", in.readInt(), accountIds.length)])//
+						.createdAt(createdAt(file, in.readLong(), in.readInt()))//
+						.amount(in.readDouble());
+				TransactionType type = TYPES[checkIndex(file, "transaction type", in.readByte(), TYPES.length)];
+				transaction.transactionType(type);
+				originals[position] = -1;
+				if (type.equals(REVERSAL)) {
+					transaction.relatedTransaction(in.readUTF());
+					int original = in.readInt();
+					// Reversals point back at a transaction before them, if at any.
+					if (original != -1) {
+						checkIndex(file, "original position", original, position);
+					}
+					originals[position] = original;
+				}
+				transactions.add(transaction.build());
+			}
+			return new LinkedTransactions(Collections.unmodifiableList(transactions), originals, List.of(),
+					List.of());
+		}
+	}
+
+	/**
+	 * @param file  snapshot being read
+	 * @param what  what the value read is, for the message
+	 * @param index value read
+	 * @param limit number of valid values, from 0
+	 * @return <code>index</code>, if valid
+	 * @throws IOException if <code>index</code> is out of range
+	 */
+	private static int checkIndex(final Path file, final String what, final long index, final long limit)
+			throws IOException {
+		if (index < 0 || index >= limit) {
+			throw new IOException(file + " is corrupt: " + what + " [" + index + "] is out of range.");
+		}
+		return (int) index;
+	}
+
+	/**
+	 * @param file        snapshot being read
+	 * @param epochSecond seconds since the epoch, read
+	 * @param nano        nanoseconds into the second, read
+	 * @return when the transaction was created
+	 * @throws IOException if the seconds or nanoseconds are out of range
+	 */
+	private static LocalDateTime createdAt(final Path file, final long epochSecond, final int nano)
+			throws IOException {
+		try {
+			return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+		} catch (DateTimeException dte) {
+			throw new IOException(file + " is corrupt: created date is out of range.", dte);
+		}
+	}
+
+}
@@ -0,0 +1,257 @@
+package org.rob.bank.service;
+
+import static org.rob.bank.model.TransactionType.REVERSAL;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.rob.bank.model.Transaction;
+import org.rob.bank.service.model.AccountQueryInput;
+import org.rob.bank.service.model.RelativeBalanceResult;
+
+/**
+ * Queries account data held in a directory of date-partitioned files, one per
+ * day, named for the day they hold, e.g. <code>transactions-2018-10-20.csv</code>
+ * or <code>2018-10-20.csv.gz</code>.
+ * <p>
+ * A partition is only read when a query first needs it: a query reads only the
+ * partitions overlapping its date range. Reversals are the exception. A reversal
+ * can cancel a payment from any earlier day, so every reversal is read when the
+ * directory is opened, and each partition is read together with the reversals
+ * from later days that cancel its payments. Opening reads only the type of
+ * every other row, and the day it was created, to check it is in the right
+ * partition.
+ */
+public final class PartitionedAccountData {
+
+	/**
+	 * Name of a partition file: anything, then the day it holds, then a CSV suffix.
+	 */
+	private static final Pattern PARTITION_NAME = Pattern.compile(".*?(\\d{4}-\\d{2}-\\d{2})\\.csv(\\.gz)?");
+
+	/**
+	 * Day part of {@link org.rob.bank.controller.App#DATE_FORMAT}, up to the time:
+	 * how every <code>createdAt</code> in a partition starts.
+	 */
+	private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy ");
+
+	/**
+	 * Partitions in date order.
+	 */
+	private final List<Partition> partitions;
+
+	/**
+	 * Reversals from every partition, in order, keyed by the ID of the transaction
+	 * reversed.
+	 */
+	private final Map<String, List<Transaction>> reversals;
+
+	/**
+	 * @param partitions partitions in date order
+	 * @param reversals  reversals in order, keyed by the ID of the transaction
+	 *                   reversed
+	 */
+	private PartitionedAccountData(final List<Partition> partitions,
+			final Map<String, List<Transaction>> reversals) {
+		this.partitions = partitions;
+		this.reversals = reversals;
+	}
+
+	/**
+	 * Find the partitions in a directory and index the reversals in them.
+	 *
+	 * @param directory holds one comma separated value file per day, named for the
+	 *                  day it holds; gzipped if the name ends with
+	 *                  <code>.gz</code>. Other files are ignored.
+	 * @return data ready to be queried
+	 * @throws IOException if the directory or a partition cannot be read, two
+	 *                     partitions hold the same day, or a partition holds a
+	 *                     transaction created on another day
+	 */
+	public static PartitionedAccountData open(final Path directory) throws IOException {
+		List<Partition> partitions = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : files.sorted().collect(Collectors.toList())) {
+				Matcher name = PARTITION_NAME.matcher(file.getFileName().toString());
+				if (Files.isRegularFile(file) && name.matches()) {
+					partitions.add(new Partition(file, parseDay(file, name.group(1))));
+				}
+			}
+		}
+		partitions.sort(Comparator.comparing(partition -> partition.from));
+		for (int index = 1; index < partitions.size(); index++) {
+			if (partitions.get(index).from.equals(partitions.get(index - 1).from)) {
+				throw new IOException("Partitions " + partitions.get(index - 1).file + " and "
+						+ partitions.get(index).file + " hold the same day.");
+			}
+		}
+
+		// Small index of reversals across all partitions, so a partition read later
+		// can drop payments reversed on later days. Only reversals are parsed.
+		Map<String, List<Transaction>> reversals = new HashMap<>();
+		for (Partition partition : partitions) {
+			String day = DAY_FORMAT.format(partition.from);
+			List<String> misplaced = new ArrayList<>(1);
+			TransactionCsvReader.readLinesFromPath(partition.file, line -> {
+				String[] fields = TransactionCsvReader.fieldsOf(line);
+				if (!fields[TransactionCsvReader.INDEX_CREATED_AT].startsWith(day)) {
+					misplaced.add(fields[TransactionCsvReader.INDEX_TRANSACTION_ID]);
+				} else if (fields[TransactionCsvReader.INDEX_TRANSACTION_TYPE].equals(REVERSAL.name())) {
+					reversals.computeIfAbsent(fields[TransactionCsvReader.INDEX_RELATED_TRANSACTION],
+							id -> new ArrayList<>(1)).add(TransactionCsvReader.fromFields(fields));
+				}
+			});
+			if (!misplaced.isEmpty()) {
+				// Queries would skip the partition for the day it was created on.
+				throw new IOException("Partition " + partition.file + " holds transactions created on another day: "
+						+ misplaced + ".");
+			}
+		}
+		return new PartitionedAccountData(List.copyOf(partitions), reversals);
+	}
+
+	/**
+	 * @param file partition file
+	 * @param day  day in the file name
+	 * @return start of the day
+	 * @throws IOException if <code>day</code> is not a valid date
+	 */
+	private static LocalDateTime parseDay(final Path file, final String day) throws IOException {
+		try {
+			return LocalDate.parse(day).atStartOfDay();
+		} catch (DateTimeParseException dtpe) {
+			throw new IOException("Partition " + file + " is not named for a valid day.", dtpe);
+		}
+	}
+
+	/**
+	 * @return number of partitions in the directory
+	 */
+	public int getPartitionCount() {
+		return partitions.size();
+	}
+
+	/**
+	 * @return number of partitions read by queries so far
+	 */
+	int getLoadedPartitionCount() {
+		return (int) partitions.stream().filter(Partition::isLoaded).count();
+	}
+
+	/**
+	 * @param query input parameters to search: taking account number and date range
+	 *              from <code>query</code>
+	 * @return result, which includes total amount and count of transactions.
+	 * @throws IOException if a partition the query needs cannot be read
+	 */
+	public RelativeBalanceResult retrieveRelativeBalance(final AccountQueryInput query) throws IOException {
+		RelativeBalanceResult result = new RelativeBalanceResult();
+		for (Partition partition : partitions) {
+			// Partitions do not overlap, so their results add up.
+			if (partition.overlaps(query)) {
+				result = result.addResult(partition.data(reversals).retrieveRelativeBalance(query));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * One day of transactions, read the first time a query needs it.
+	 */
+	private static final class Partition {
+
+		/**
+		 * File holding the day's transactions.
+		 */
+		private final Path file;
+
+		/**
+		 * Start of the day, inclusive.
+		 */
+		private final LocalDateTime from;
+
+		/**
+		 * Start of the next day, exclusive.
+		 */
+		private final LocalDateTime to;
+
+		/**
+		 * The day's transactions, once read. Guarded by <code>this</code>.
+		 */
+		private AccountData data;
+
+		/**
+		 * @param file file holding the day's transactions
+		 * @param from start of the day
+		 */
+		private Partition(final Path file, final LocalDateTime from) {
+			this.file = file;
+			this.from = from;
+			this.to = from.plusDays(1);
+		}
+
+		/**
+		 * @param query includes date range and as-of time
+		 * @return true if this partition holds part of the query's date range before
+		 *         any as-of time
+		 */
+		private boolean overlaps(final AccountQueryInput query) {
+			return query.getFrom().isBefore(to) && from.isBefore(query.getEnd());
+		}
+
+		/**
+		 * @return true if the day's transactions have been read
+		 */
+		private synchronized boolean isLoaded() {
+			return data != null;
+		}
+
+		/**
+		 * @param reversals reversals from every partition, in order, keyed by the ID
+		 *                  of the transaction reversed
+		 * @return the day's transactions, read if need be, with the first reversal
+		 *         from a later day of each of them appended
+		 * @throws IOException if the file cannot be read
+		 */
+		private synchronized AccountData data(final Map<String, List<Transaction>> reversals) throws IOException {
+			if (data == null) {
+				List<Transaction> transactions = new ArrayList<>();
+				Set<String> ids = new LinkedHashSet<>();
+				TransactionCsvReader.readFromPath(file, transaction -> {
+					transactions.add(transaction);
+					ids.add(transaction.getTransactionId());
+				});
+				// Once per ID: the first later reversal cancels every duplicate before it.
+				List<Transaction> laterReversals = new ArrayList<>();
+				for (String id : ids) {
+					reversals.getOrDefault(id, List.of()).stream()//
+							.filter(reversal -> !reversal.getCreatedAt().isBefore(to))//
+							.findFirst()//
+							.ifPresent(laterReversals::add);
+				}
+				// Later reversals sort after the whole day, so the data stays in order.
+				laterReversals.sort(Comparator.comparing(Transaction::getCreatedAt));
+				transactions.addAll(laterReversals);
+				data = new AccountData(transactions);
+			}
+			return data;
+		}
+	}
+
+}
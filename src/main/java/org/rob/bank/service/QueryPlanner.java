@@ -0,0 +1,114 @@
+package org.rob.bank.service;
+
+import static org.rob.bank.service.model.QueryPlan.AccessPath.ACCOUNT_INDEX;
+import static org.rob.bank.service.model.QueryPlan.AccessPath.CHECKPOINTS;
+import static org.rob.bank.service.model.QueryPlan.AccessPath.FULL_SCAN;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.rob.bank.service.model.AccountQueryInput;
+import org.rob.bank.service.model.QueryPlan;
+import org.rob.bank.service.model.QueryPlan.AccessPath;
+
+/**
+ * Chooses the cheapest way to answer a relative balance query.
+ * <p>
+ * Costs are estimated in transactions visited, from statistics the indexes
+ * already keep: how many transactions there are in all and for the account,
+ * the dates of the first and last of each, and the share of the account's that
+ * are reversals. Transactions are assumed to be spread evenly over time between
+ * those dates. Each of the account's transactions checked for a reversal costs
+ * one more for every reversal among them, which is about how often the check
+ * finds a reversal and follows it to the transaction cancelled.
+ */
+final class QueryPlanner {
+
+	/**
+	 * Not for instantiation.
+	 */
+	private QueryPlanner() {
+	}
+
+	/**
+	 * @param snapshot data to be searched
+	 * @param query    account and date range
+	 * @return plan with the cheapest access path
+	 */
+	static QueryPlan plan(final Snapshot snapshot, final AccountQueryInput query) {
+		AccountIndex account = snapshot.account(query.getAccountId());
+		int accountTransactions = account == null ? 0 : account.size();
+		double rangeTransactions = account == null ? 0.0
+				: accountTransactions * share(account.getFirstCreatedAt(), account.getLastCreatedAt(),
+						query.getFrom(), query.getEnd());
+		double reversalRate = account == null ? 0.0 : (double) account.getReversalCount() / accountTransactions;
+
+		double checked = 1.0 + reversalRate;
+
+		Map<AccessPath, Double> costs = new EnumMap<>(AccessPath.class);
+		double search = log2(accountTransactions + 1);
+		costs.put(ACCOUNT_INDEX, search + rangeTransactions * checked);
+		if (snapshot.size() == 0) {
+			costs.put(FULL_SCAN, 0.0);
+		} else {
+			// Seek with the sparse time index, walk the block to the start of the range on
+			// average half way through it, then walk the range, checking the account's.
+			LocalDateTime first = snapshot.getFirstCreatedAt();
+			LocalDateTime last = snapshot.getLastCreatedAt();
+			costs.put(FULL_SCAN,
+					log2(snapshot.size() / (double) Snapshot.TIME_INDEX_INTERVAL + 1)
+							+ Math.min(Snapshot.TIME_INDEX_INTERVAL / 2.0,
+									snapshot.size() * share(first, last, LocalDateTime.MIN, query.getFrom()))
+							+ snapshot.size() * share(first, last, query.getFrom(), query.getEnd())
+							+ rangeTransactions * reversalRate);
+		}
+		// Checkpoints count every reversal, so cannot answer as-of queries.
+		if (account != null && query.getAsOf() == null) {
+			// Two balances, each a search then on average half an interval past the
+			// checkpoint before it.
+			costs.put(CHECKPOINTS,
+					2 * (search + Math.min(accountTransactions, account.getCheckpointInterval()) / 2.0 * checked));
+		}
+
+		// Ties go to the account index: it is exact and touches the fewest rows.
+		AccessPath cheapest = ACCOUNT_INDEX;
+		for (Map.Entry<AccessPath, Double> cost : costs.entrySet()) {
+			if (cost.getValue() < costs.get(cheapest)) {
+				cheapest = cost.getKey();
+			}
+		}
+		return new QueryPlan(cheapest, costs, snapshot.size(), accountTransactions, rangeTransactions,
+				reversalRate);
+	}
+
+	/**
+	 * @param value positive number
+	 * @return base 2 logarithm of <code>value</code>
+	 */
+	private static double log2(final double value) {
+		return Math.log(value) / Math.log(2);
+	}
+
+	/**
+	 * @param first earliest transaction date
+	 * @param last  latest transaction date
+	 * @param from  start of date range, inclusive
+	 * @param to    end of date range, exclusive
+	 * @return estimated share of transactions between <code>first</code> and
+	 *         <code>last</code> that fall in the date range, from 0 to 1
+	 */
+	private static double share(final LocalDateTime first, final LocalDateTime last, final LocalDateTime from,
+			final LocalDateTime to) {
+		LocalDateTime overlapFrom = from.isAfter(first) ? from : first;
+		LocalDateTime overlapTo = to.isBefore(last) ? to : last;
+		long span = ChronoUnit.SECONDS.between(first, last);
+		if (span == 0) {
+			// Every transaction at the same moment: all in range or none.
+			return !first.isBefore(from) && first.isBefore(to) ? 1.0 : 0.0;
+		}
+		return Math.max(0.0, (double) ChronoUnit.SECONDS.between(overlapFrom, overlapTo) / span);
+	}
+
+}
@@ -0,0 +1,278 @@
+package org.rob.bank.service;
+
+import static org.rob.bank.controller.App.DATE_FORMAT;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.rob.bank.service.model.AccountQueryInput;
+import org.rob.bank.service.model.DollarFormat;
+import org.rob.bank.service.model.RelativeBalanceResult;
+
+/**
+ * Writes query results to a channel, one line each, in bulk.
+ * <p>
+ * Many threads may write at once: each formats its own line, and lines are
+ * written in the order given by their sequence numbers regardless of which
+ * thread finishes first. Sequence numbers start at 0 and every number must be
+ * written exactly once.
+ * <p>
+ * A line written ahead of its turn is held in memory until every line before it
+ * has been written, so memory grows with how far writers get ahead of the
+ * oldest line not yet written, without limit. To keep it small, hand out
+ * sequence numbers in order, e.g. from a shared counter, rather than giving
+ * each writer a large block of its own.
+ */
+public final class ResultWriter implements Closeable {
+
+	/**
+	 * How results are laid out.
+	 */
+	public enum Format {
+
+		/**
+		 * Comma separated values with a header line.
+		 */
+		CSV,
+
+		/**
+		 * One JSON object per line.
+		 */
+		JSON_LINES;
+	}
+
+	/**
+	 * Header line for {@link Format#CSV}.
+	 */
+	private static final String CSV_HEADER = "accountId,from,to,relativeBalance,countTransactions,provisional\n";
+
+	/**
+	 * Size of the buffer filled before writing to the channel.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Where results are written.
+	 */
+	private final WritableByteChannel channel;
+
+	/**
+	 * How results are laid out.
+	 */
+	private final Format format;
+
+	/**
+	 * Lines waiting to be written to the channel. Guarded by <code>this</code>.
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	/**
+	 * Turns lines into bytes. Guarded by <code>this</code>.
+	 */
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+	/**
+	 * Each thread formats into its own builder, re-used for every line.
+	 */
+	private final ThreadLocal<StringBuilder> lines = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+	/**
+	 * Lines that arrived before those ahead of them in sequence, keyed by sequence
+	 * number. Guarded by <code>this</code>.
+	 */
+	private final Map<Long, String> pending = new HashMap<>();
+
+	/**
+	 * Sequence number of the next line to write. Guarded by <code>this</code>.
+	 */
+	private long nextSequence;
+
+	/**
+	 * @param channel where results are written
+	 * @param format  how results are laid out
+	 * @throws IOException if the header cannot be written
+	 */
+	public ResultWriter(final WritableByteChannel channel, final Format format) throws IOException {
+		this.channel = channel;
+		this.format = format;
+		if (format == Format.CSV) {
+			synchronized (this) {
+				encode(CSV_HEADER);
+			}
+		}
+	}
+
+	/**
+	 * Write one result, once all those before it in sequence have been written.
+	 *
+	 * @param sequence position of this result in the output, from 0
+	 * @param query    criteria the result answers
+	 * @param result   result of the query
+	 * @throws IOException              if the channel cannot be written to
+	 * @throws IllegalArgumentException if <code>sequence</code> has already been
+	 *                                  written
+	 */
+	public void write(final long sequence, final AccountQueryInput query, final RelativeBalanceResult result)
+			throws IOException {
+		StringBuilder line = lines.get();
+		line.setLength(0);
+		if (format == Format.CSV) {
+			appendCsv(line, query, result);
+		} else {
+			appendJson(line, query, result);
+		}
+
+		synchronized (this) {
+			if (sequence < nextSequence || sequence > nextSequence && pending.containsKey(sequence)) {
+				throw new IllegalArgumentException("Result " + sequence + " has already been written.");
+			}
+			if (sequence != nextSequence) {
+				pending.put(sequence, line.toString());
+				return;
+			}
+			encode(line);
+			nextSequence++;
+			for (String next = pending.remove(nextSequence); next != null; next = pending.remove(nextSequence)) {
+				encode(next);
+				nextSequence++;
+			}
+		}
+	}
+
+	/**
+	 * Write everything buffered so far to the channel.
+	 *
+	 * @throws IOException if the channel cannot be written to
+	 */
+	public synchronized void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Flush and close the channel.
+	 *
+	 * @throws IOException           if the channel cannot be written to
+	 * @throws IllegalStateException if a sequence number was never written, so
+	 *                               later results could not be
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+		if (!pending.isEmpty()) {
+			throw new IllegalStateException("Result " + nextSequence + " was never written, so " + pending.size()
+					+ " results after it were not written either.");
+		}
+	}
+
+	/**
+	 * Encode a line into the buffer, flushing whenever it fills. Callers must hold
+	 * the lock on <code>this</code>.
+	 *
+	 * @param line text to write
+	 * @throws IOException if the channel cannot be written to
+	 */
+	private void encode(final CharSequence line) throws IOException {
+		CharBuffer chars = CharBuffer.wrap(line);
+		CoderResult coderResult = encoder.encode(chars, buffer, true);
+		while (coderResult.isOverflow()) {
+			flush();
+			coderResult = encoder.encode(chars, buffer, true);
+		}
+		if (coderResult.isError()) {
+			coderResult.throwException();
+		}
+		encoder.reset();
+	}
+
+	/**
+	 * @param line   where to append the result
+	 * @param query  criteria the result answers
+	 * @param result result of the query
+	 */
+	private static void appendCsv(final StringBuilder line, final AccountQueryInput query,
+			final RelativeBalanceResult result) {
+		appendCsvField(line, query.getAccountId());
+		line.append(',');
+		DATE_FORMAT.formatTo(query.getFrom(), line);
+		line.append(',');
+		DATE_FORMAT.formatTo(query.getTo(), line);
+		// Quoted: dollar amounts contain commas.
+		line.append(",\"");
+		DollarFormat.appendTo(line, result.getAmount());
+		line.append("\",").append(result.getCountTransactions().intValue()) //
+				.append(',').append(result.isProvisional()).append('\n');
+	}
+
+	/**
+	 * @param line  where to append the field
+	 * @param field value, quoted if it contains anything special to CSV
+	 */
+	private static void appendCsvField(final StringBuilder line, final String field) {
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) {
+			line.append(field);
+			return;
+		}
+		line.append('"');
+		for (int index = 0; index < field.length(); index++) {
+			char character = field.charAt(index);
+			if (character == '"') {
+				line.append('"');
+			}
+			line.append(character);
+		}
+		line.append('"');
+	}
+
+	/**
+	 * @param line   where to append the result
+	 * @param query  criteria the result answers
+	 * @param result result of the query
+	 */
+	private static void appendJson(final StringBuilder line, final AccountQueryInput query,
+			final RelativeBalanceResult result) {
+		line.append("{\"accountId\":\"");
+		appendJsonString(line, query.getAccountId());
+		line.append("\",\"from\":\"");
+		DATE_FORMAT.formatTo(query.getFrom(), line);
+		line.append("\",\"to\":\"");
+		DATE_FORMAT.formatTo(query.getTo(), line);
+		line.append("\",\"relativeBalance\":\"");
+		DollarFormat.appendTo(line, result.getAmount());
+		line.append("\",\"countTransactions\":").append(result.getCountTransactions().intValue()) //
+				.append(",\"provisional\":").append(result.isProvisional()).append("}\n");
+	}
+
+	/**
+	 * @param line  where to append the string
+	 * @param value text to escape for use inside a JSON string
+	 */
+	private static void appendJsonString(final StringBuilder line, final String value) {
+		for (int index = 0; index < value.length(); index++) {
+			char character = value.charAt(index);
+			if (character == '"' || character == '\\') {
+				line.append('\\').append(character);
+			} else if (character < ' ') {
+				line.append(String.format("\\u%04x", (int) character));
+			} else {
+				line.append(character);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,327 @@
+package org.rob.bank.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.rob.bank.model.Transaction;
+
+/**
+ * One published version of the data held by {@link AccountData}: every
+ * transaction appended up to the end of one batch, and nothing after.
+ * <p>
+ * The arrays and maps behind a snapshot are shared with later snapshots, which
+ * only ever add to them past what this snapshot can see, so reading a snapshot
+ * needs no lock. Readers pin a snapshot while they use it so the versions of
+ * each account's index it needs are kept until they are done.
+ */
+final class Snapshot {
+
+	/**
+	 * Pin count of a snapshot that has been retired and can no longer be pinned.
+	 */
+	private static final int RETIRED = -1;
+
+	/**
+	 * Number of transactions between entries of the sparse time index.
+	 */
+	static final int TIME_INDEX_INTERVAL = 1024;
+
+	/**
+	 * Number of batches published before this one; 0 for an empty snapshot.
+	 */
+	private final long epoch;
+
+	/**
+	 * Every transaction appended so far, in order. Only the first {@link #size}
+	 * belong to this snapshot.
+	 */
+	private final Transaction[] transactions;
+
+	/**
+	 * Number of transactions in this snapshot.
+	 */
+	private final int size;
+
+	/**
+	 * Sparse time index: element <code>i</code> is when transaction
+	 * <code>i * TIME_INDEX_INTERVAL</code> was created, in seconds since the epoch
+	 * as if at UTC. Only entries for the first {@link #size} transactions belong
+	 * to this snapshot.
+	 */
+	private final long[] timeIndex;
+
+	/**
+	 * ID of the account with each ordinal; may include accounts newer than this
+	 * snapshot.
+	 */
+	private final String[] accountIds;
+
+	/**
+	 * Latest version of each account's index, keyed by account ID; may be newer
+	 * than this snapshot.
+	 */
+	private final Map<String, AccountIndex> accounts;
+
+	/**
+	 * Transactions cancelled by a reversal after them, keyed by the ID of the
+	 * transactions cancelled; may include reversals newer than this snapshot.
+	 */
+	private final Map<String, Cancellation> cancellations;
+
+	/**
+	 * Number of readers using this snapshot, or {@link #RETIRED}.
+	 */
+	private final AtomicInteger pins = new AtomicInteger();
+
+	/**
+	 * @param epoch         number of batches published before this one
+	 * @param transactions  every transaction appended so far
+	 * @param size          number of transactions in this snapshot
+	 * @param timeIndex     when every {@link #TIME_INDEX_INTERVAL}th transaction
+	 *                      was created, in seconds since the epoch
+	 * @param accountIds    ID of the account with each ordinal
+	 * @param accounts      latest version of each account's index
+	 * @param cancellations transactions cancelled by a reversal after them, keyed
+	 *                      by their ID
+	 */
+	Snapshot(final long epoch, final Transaction[] transactions, final int size, final long[] timeIndex,
+			final String[] accountIds, final Map<String, AccountIndex> accounts,
+			final Map<String, Cancellation> cancellations) {
+		this.epoch = epoch;
+		this.transactions = transactions;
+		this.size = size;
+		this.timeIndex = timeIndex;
+		this.accountIds = accountIds;
+		this.accounts = accounts;
+		this.cancellations = cancellations;
+	}
+
+	/**
+	 * @return number of batches published before this one
+	 */
+	long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return number of transactions in this snapshot
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return when the first transaction was created; null if there are none
+	 */
+	LocalDateTime getFirstCreatedAt() {
+		return size == 0 ? null : transactions[0].getCreatedAt();
+	}
+
+	/**
+	 * @return when the latest transaction was created; null if there are none
+	 */
+	LocalDateTime getLastCreatedAt() {
+		return size == 0 ? null : transactions[size - 1].getCreatedAt();
+	}
+
+	/**
+	 * @return every transaction in this snapshot, in order
+	 */
+	List<Transaction> getTransactions() {
+		return Arrays.asList(transactions).subList(0, size);
+	}
+
+	/**
+	 * @param from start of date range, inclusive
+	 * @param to   end of date range, exclusive
+	 * @return every transaction in this snapshot in the date range, in order
+	 */
+	List<Transaction> getTransactions(final LocalDateTime from, final LocalDateTime to) {
+		int start = firstAtOrAfter(from);
+		return getTransactions().subList(start, Math.max(start, firstAtOrAfter(to)));
+	}
+
+	/**
+	 * @param createdAt when a transaction was created
+	 * @return key of the transaction in the sparse time index
+	 */
+	static long timeIndexKey(final LocalDateTime createdAt) {
+		return createdAt.toEpochSecond(ZoneOffset.UTC);
+	}
+
+	/**
+	 * Seek with the sparse time index to the block holding <code>from</code>, then
+	 * walk the block.
+	 *
+	 * @param from date to search for
+	 * @return index of the first transaction created at or after
+	 *         <code>from</code>; {@link #size} if none
+	 */
+	private int firstAtOrAfter(final LocalDateTime from) {
+		long key = timeIndexKey(from);
+		// Find the last block starting before the second of from: every transaction
+		// in the blocks before it is earlier still.
+		int low = 0;
+		int high = (size + TIME_INDEX_INTERVAL - 1) / TIME_INDEX_INTERVAL;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timeIndex[middle] < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		int index = Math.max(0, low - 1) * TIME_INDEX_INTERVAL;
+		while (index < size && transactions[index].getCreatedAt().isBefore(from)) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * @param accountId ID of an account
+	 * @return index of the account's transactions as of this snapshot; null if it
+	 *         had none
+	 */
+	AccountIndex account(final String accountId) {
+		AccountIndex latest = accounts.get(accountId);
+		return latest == null ? null : latest.asOf(epoch);
+	}
+
+	/**
+	 * @param ordinal ordinal of an account in this snapshot
+	 * @return ID of the account
+	 */
+	String accountIdOf(final int ordinal) {
+		return accountIds[ordinal];
+	}
+
+	/**
+	 * @param transaction that may or may not have been reversed
+	 * @return true if no reversal of the transaction is in this snapshot
+	 */
+	boolean isCurrent(final Transaction transaction) {
+		int reversal = reversalOf(transaction);
+		return reversal < 0 || reversal >= size;
+	}
+
+	/**
+	 * @param transaction that may or may not have been reversed
+	 * @param asOf        point in time; reversals created at or after it do not
+	 *                    count
+	 * @return true if no reversal of the transaction created before
+	 *         <code>asOf</code> is in this snapshot
+	 */
+	boolean isCurrent(final Transaction transaction, final LocalDateTime asOf) {
+		// Only the first reversal after the transaction is indexed, and none after it
+		// is created before it.
+		int reversal = reversalOf(transaction);
+		return reversal < 0 || reversal >= size || !transactions[reversal].getCreatedAt().isBefore(asOf);
+	}
+
+	/**
+	 * @param transaction held in this snapshot
+	 * @return position of the first reversal after the transaction that reverses
+	 *         it, in this snapshot or a later one; -1 if none
+	 */
+	private int reversalOf(final Transaction transaction) {
+		Cancellation cancellation = cancellations.get(transaction.getTransactionId());
+		return cancellation == null ? -1 : cancellation.reversalOf(transaction);
+	}
+
+	/**
+	 * @param asOf point in time from which reversals do not count; null to count
+	 *             every reversal
+	 * @return true for transactions that had not been reversed as of
+	 *         <code>asOf</code>
+	 */
+	Predicate<Transaction> currentAsOf(final LocalDateTime asOf) {
+		return asOf == null ? this::isCurrent : transaction -> isCurrent(transaction, asOf);
+	}
+
+	/**
+	 * @return true if pinned; false if this snapshot has been retired, so the
+	 *         reader should pin the latest one instead
+	 */
+	boolean pin() {
+		int current = pins.get();
+		while (current != RETIRED) {
+			if (pins.compareAndSet(current, current + 1)) {
+				return true;
+			}
+			current = pins.get();
+		}
+		return false;
+	}
+
+	/**
+	 * Release a pin taken by {@link #pin()}.
+	 */
+	void unpin() {
+		pins.decrementAndGet();
+	}
+
+	/**
+	 * @return true if no reader had this snapshot pinned, so it is now retired and
+	 *         never will be
+	 */
+	boolean retire() {
+		return pins.compareAndSet(0, RETIRED);
+	}
+
+	/**
+	 * A transaction cancelled by a reversal after it, linked to any other
+	 * transaction with the same ID that was cancelled before it. Immutable, so a
+	 * new head can be published while readers walk the old one.
+	 */
+	static final class Cancellation {
+
+		/**
+		 * Transaction cancelled.
+		 */
+		private final Transaction original;
+
+		/**
+		 * Position of the reversal that cancelled it.
+		 */
+		private final int reversal;
+
+		/**
+		 * Earlier cancellation of a transaction with the same ID; null if none.
+		 */
+		private final Cancellation next;
+
+		/**
+		 * @param original transaction cancelled
+		 * @param reversal position of the reversal that cancelled it
+		 * @param next     earlier cancellation of a transaction with the same ID;
+		 *                 null if none
+		 */
+		Cancellation(final Transaction original, final int reversal, final Cancellation next) {
+			this.original = original;
+			this.reversal = reversal;
+			this.next = next;
+		}
+
+		/**
+		 * @param transaction with the ID of the transactions cancelled
+		 * @return position of the reversal that cancelled that very transaction; -1
+		 *         if it has not been cancelled
+		 */
+		int reversalOf(final Transaction transaction) {
+			// Compared by identity: duplicates of a transaction may be cancelled apart.
+			for (Cancellation cancellation = this; cancellation != null; cancellation = cancellation.next) {
+				if (cancellation.original == transaction) {
+					return cancellation.reversal;
+				}
+			}
+			return -1;
+		}
+	}
+
+}
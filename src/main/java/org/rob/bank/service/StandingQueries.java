@@ -0,0 +1,196 @@
+package org.rob.bank.service;
+
+import static org.rob.bank.model.TransactionType.REVERSAL;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.rob.bank.model.Transaction;
+
+/**
+ * Standing queries registered with one {@link AccountData}, indexed so that
+ * appending a transaction only touches the queries whose results it changes:
+ * those on the accounts it is to or from, and those whose sliding window it
+ * moves past an older payment. The cost of appending does not grow with the
+ * number of queries that are left unchanged.
+ * <p>
+ * Only used while holding the lock on the {@link AccountData}.
+ */
+final class StandingQueries {
+
+	/**
+	 * Standing queries keyed by the ID of the account they examine.
+	 */
+	private final Map<String, List<StandingQuery>> byAccount = new HashMap<>();
+
+	/**
+	 * Sliding window queries in the order their oldest payment slides out of the
+	 * window; one entry for each query with payments in its window.
+	 */
+	private final PriorityQueue<Expiry> expiring = new PriorityQueue<>(Comparator.comparing(Expiry::getAt));
+
+	/**
+	 * Queries whose result may have changed since results were last pushed.
+	 */
+	private final Set<StandingQuery> changed = new LinkedHashSet<>();
+
+	/**
+	 * When the latest transaction appended was created; null if none yet.
+	 */
+	private LocalDateTime latest;
+
+	/**
+	 * @param standingQuery query to keep up to date, holding the payments already
+	 *                      in its window
+	 */
+	void register(final StandingQuery standingQuery) {
+		byAccount.computeIfAbsent(standingQuery.getQuery().getAccountId(), id -> new ArrayList<>())
+				.add(standingQuery);
+		offer(standingQuery);
+	}
+
+	/**
+	 * @param standingQuery query to stop updating
+	 */
+	void unregister(final StandingQuery standingQuery) {
+		standingQuery.markClosed();
+		String accountId = standingQuery.getQuery().getAccountId();
+		List<StandingQuery> queries = byAccount.get(accountId);
+		if (queries != null && queries.remove(standingQuery) && queries.isEmpty()) {
+			byAccount.remove(accountId);
+		}
+		// Any entry in expiring is skipped once it comes up.
+	}
+
+	/**
+	 * @param transaction just appended, after all those before it
+	 */
+	void added(final Transaction transaction) {
+		advance(transaction.getCreatedAt());
+		if (transaction.getTransactionType().equals(REVERSAL)) {
+			return;
+		}
+		for (StandingQuery standingQuery : queriesFor(transaction)) {
+			if (standingQuery.accepts(transaction)) {
+				if (standingQuery.include(transaction)) {
+					offer(standingQuery);
+				}
+				changed.add(standingQuery);
+			}
+		}
+	}
+
+	/**
+	 * @param original payment appended earlier that has just been reversed
+	 */
+	void cancelled(final Transaction original) {
+		for (StandingQuery standingQuery : queriesFor(original)) {
+			standingQuery.cancel(original,
+					standingQuery.getQuery().isSliding() ? latest.minus(standingQuery.getQuery().getWindow()) : null);
+			changed.add(standingQuery);
+		}
+	}
+
+	/**
+	 * Push the result of each query that has changed to its listener.
+	 */
+	void push() {
+		// Copied first: listeners may subscribe or close queries.
+		List<StandingQuery> toPush = new ArrayList<>(changed);
+		changed.clear();
+		toPush.forEach(StandingQuery::push);
+	}
+
+	/**
+	 * Slide sliding windows forward, dropping the payments that fall out of them.
+	 *
+	 * @param createdAt when the latest transaction appended was created
+	 */
+	private void advance(final LocalDateTime createdAt) {
+		latest = createdAt;
+		while (!expiring.isEmpty() && !expiring.peek().getAt().isAfter(latest)) {
+			StandingQuery standingQuery = expiring.poll().getStandingQuery();
+			if (!standingQuery.isClosed()) {
+				standingQuery.expire(latest.minus(standingQuery.getQuery().getWindow()));
+				offer(standingQuery);
+				changed.add(standingQuery);
+			}
+		}
+	}
+
+	/**
+	 * @param standingQuery query to queue for expiry, if it has a sliding window
+	 *                      with payments in it
+	 */
+	private void offer(final StandingQuery standingQuery) {
+		LocalDateTime expiry = standingQuery.getExpiry();
+		if (expiry != null) {
+			expiring.add(new Expiry(expiry, standingQuery));
+		}
+	}
+
+	/**
+	 * @param transaction to or from one or two accounts
+	 * @return queries on those accounts
+	 */
+	private List<StandingQuery> queriesFor(final Transaction transaction) {
+		List<StandingQuery> from = byAccount.getOrDefault(transaction.getFromAccountId(), List.of());
+		if (transaction.getToAccountId().equals(transaction.getFromAccountId())) {
+			return from;
+		}
+		List<StandingQuery> to = byAccount.getOrDefault(transaction.getToAccountId(), List.of());
+		if (from.isEmpty() || to.isEmpty()) {
+			return from.isEmpty() ? to : from;
+		}
+		List<StandingQuery> both = new ArrayList<>(from);
+		both.addAll(to);
+		return both;
+	}
+
+	/**
+	 * When the oldest payment in a sliding window query slides out of it.
+	 */
+	private static final class Expiry {
+
+		/**
+		 * When the payment slides out.
+		 */
+		private final LocalDateTime at;
+
+		/**
+		 * Query whose window it slides out of.
+		 */
+		private final StandingQuery standingQuery;
+
+		/**
+		 * @param at            when the payment slides out
+		 * @param standingQuery query whose window it slides out of
+		 */
+		private Expiry(final LocalDateTime at, final StandingQuery standingQuery) {
+			this.at = at;
+			this.standingQuery = standingQuery;
+		}
+
+		/**
+		 * @return when the payment slides out
+		 */
+		private LocalDateTime getAt() {
+			return at;
+		}
+
+		/**
+		 * @return query whose window it slides out of
+		 */
+		private StandingQuery getStandingQuery() {
+			return standingQuery;
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+package org.rob.bank.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.rob.bank.model.Transaction;
+import org.rob.bank.service.model.Cents;
+import org.rob.bank.service.model.RelativeBalanceResult;
+import org.rob.bank.service.model.StandingQueryInput;
+
+/**
+ * A query registered with {@link AccountData#subscribe(StandingQueryInput, Consumer)}
+ * whose result is kept up to date as transactions are appended, and pushed to
+ * its listener whenever it changes. Close it to stop the updates.
+ * <p>
+ * All state is guarded by the lock on the {@link AccountData} it belongs to.
+ */
+public final class StandingQuery implements AutoCloseable {
+
+	/**
+	 * Data the query is registered with.
+	 */
+	private final AccountData owner;
+
+	/**
+	 * Account and window.
+	 */
+	private final StandingQueryInput query;
+
+	/**
+	 * Receives each changed result.
+	 */
+	private final Consumer<RelativeBalanceResult> listener;
+
+	/**
+	 * Un-reversed payments in a sliding window, oldest first; unused for a fixed
+	 * window.
+	 */
+	private final Deque<Transaction> inWindow = new ArrayDeque<>();
+
+	/**
+	 * Payments in {@link #inWindow} that have since been reversed, so already
+	 * taken out of the balance. Compared by identity, as duplicates may be equal.
+	 */
+	private final Set<Transaction> cancelled = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Relative balance in cents of the payments in the window, kept exact however
+	 * long the query stands.
+	 */
+	private long cents;
+
+	/**
+	 * Count of the payments in the window.
+	 */
+	private int count;
+
+	/**
+	 * Last result pushed to the listener; null if none yet.
+	 */
+	private RelativeBalanceResult pushed;
+
+	/**
+	 * True once closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * @param owner    data the query is registered with
+	 * @param query    account and window
+	 * @param listener receives each changed result
+	 */
+	StandingQuery(final AccountData owner, final StandingQueryInput query,
+			final Consumer<RelativeBalanceResult> listener) {
+		this.owner = owner;
+		this.query = query;
+		this.listener = listener;
+	}
+
+	/**
+	 * @return account and window
+	 */
+	public StandingQueryInput getQuery() {
+		return query;
+	}
+
+	/**
+	 * Stop updating the result. Results already being pushed may still arrive.
+	 */
+	@Override
+	public void close() {
+		owner.unsubscribe(this);
+	}
+
+	/**
+	 * @return true once closed
+	 */
+	boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Mark closed, so no more results are pushed.
+	 */
+	void markClosed() {
+		closed = true;
+	}
+
+	/**
+	 * @param payment un-reversed payment to or from the account
+	 * @return true if the payment falls in a fixed window; always true for a
+	 *         sliding window, where the newest payment is always in it
+	 */
+	boolean accepts(final Transaction payment) {
+		return query.isSliding()
+				|| !payment.getCreatedAt().isBefore(query.getFrom()) && payment.getCreatedAt().isBefore(query.getTo());
+	}
+
+	/**
+	 * @param payment un-reversed payment to or from the account, in the window
+	 * @return true if this is the first payment in a sliding window, so it has
+	 *         just started to expire
+	 */
+	boolean include(final Transaction payment) {
+		cents += signedCents(payment);
+		count++;
+		if (!query.isSliding()) {
+			return false;
+		}
+		inWindow.addLast(payment);
+		return inWindow.size() == 1;
+	}
+
+	/**
+	 * @param payment reversed payment to or from the account
+	 * @param oldest  start of a sliding window, exclusive; ignored for a fixed one
+	 */
+	void cancel(final Transaction payment, final LocalDateTime oldest) {
+		if (query.isSliding()) {
+			if (!payment.getCreatedAt().isAfter(oldest) || !cancelled.add(payment)) {
+				// Already slid out of the window.
+				return;
+			}
+		} else if (!accepts(payment)) {
+			return;
+		}
+		cents -= signedCents(payment);
+		count--;
+	}
+
+	/**
+	 * @return when the oldest payment in a sliding window slides out of it; null if
+	 *         there are none
+	 */
+	LocalDateTime getExpiry() {
+		Transaction oldest = inWindow.peekFirst();
+		return oldest == null ? null : oldest.getCreatedAt().plus(query.getWindow());
+	}
+
+	/**
+	 * Drop the payments that have slid out of a sliding window.
+	 *
+	 * @param oldest start of the window, exclusive
+	 */
+	void expire(final LocalDateTime oldest) {
+		while (!inWindow.isEmpty() && !inWindow.peekFirst().getCreatedAt().isAfter(oldest)) {
+			Transaction payment = inWindow.removeFirst();
+			if (!cancelled.remove(payment)) {
+				cents -= signedCents(payment);
+				count--;
+			}
+		}
+	}
+
+	/**
+	 * Push the result to the listener if it has changed since last pushed.
+	 */
+	void push() {
+		RelativeBalanceResult result = new RelativeBalanceResult(Cents.toDollars(cents), count);
+		if (!closed && !result.equals(pushed)) {
+			pushed = result;
+			listener.accept(result);
+		}
+	}
+
+	/**
+	 * @param payment to or from the account
+	 * @return amount in cents received by the account; negative if paid out
+	 */
+	private long signedCents(final Transaction payment) {
+		long paid = Cents.of(payment.getAmount());
+		return query.getAccountId().equals(payment.getToAccountId()) ? paid : -paid;
+	}
+
+}
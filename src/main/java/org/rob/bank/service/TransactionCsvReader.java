@@ -4,26 +4,36 @@
 import static org.rob.bank.model.TransactionType.REVERSAL;
 
 import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 import org.rob.bank.model.Transaction;
 import org.rob.bank.model.TransactionType;
 import org.rob.bank.model.Transaction.TransactionBuilder;
 
 /**
- * Read {@link Transaction}s from a comma separated value file.
+ * Read {@link Transaction}s from a comma separated value file, which may be
+ * gzipped.
  */
 public final class TransactionCsvReader {
 
+	/** File name suffix of gzipped files. */
+	private static final String GZIP_SUFFIX = ".gz";
+
 	/** Index to field transactionId on CSV record. */
-	private static final int INDEX_TRANSACTION_ID = 0;
+	static final int INDEX_TRANSACTION_ID = 0;
 
 	/** Index to field fromAccountId on CSV record. */
 	private static final int INDEX_FROM_ACCOUNT_ID = 1;
@@ -32,30 +42,110 @@ public final class TransactionCsvReader {
 	private static final int INDEX_TO_ACCOUNT_ID = 2;
 
 	/** Index to field createdAt on CSV record. */
-	private static final int INDEX_CREATED_AT = 3;
+	static final int INDEX_CREATED_AT = 3;
 
 	/** Index to field amount on CSV record. */
 	private static final int INDEX_AMOUNT = 4;
 
 	/** Index to field transactionType on CSV record. */
-	private static final int INDEX_TRANSACTION_TYPE = 5;
+	static final int INDEX_TRANSACTION_TYPE = 5;
 
 	/** Index to field relatedTransaction on CSV record. */
-	private static final int INDEX_RELATED_TRANSACTION = 6;
+	static final int INDEX_RELATED_TRANSACTION = 6;
 
 	/**
-	 * @param csvFile comma separated value file containing transaction data.
+	 * @param csvFile comma separated value file containing transaction data;
+	 *                gzipped if its name ends with <code>.gz</code>.
 	 * @return unmodifiable list of {@link Transaction}s in the same order in which
 	 *         they appear in the <code>csvFile</code>
 	 * @throws IOException if we cannot read from the file for some reason.
 	 */
 	public static List<Transaction> readFromFile(final String csvFilePath) throws IOException {
+		List<Transaction> transactions = new ArrayList<>();
+		readFromFile(csvFilePath, transactions::add);
+		return Collections.unmodifiableList(transactions);
+	}
+
+	/**
+	 * Read transactions one at a time, handing each to <code>consumer</code> as soon
+	 * as it is parsed rather than holding the whole file in memory.
+	 * 
+	 * @param csvFilePath comma separated value file containing transaction data;
+	 *                    gzipped if its name ends with <code>.gz</code>.
+	 * @param consumer    receives each {@link Transaction} in the same order in
+	 *                    which they appear in the file
+	 * @throws FileNotFoundException if there is no such file on the classpath.
+	 * @throws IOException           if we cannot read from the file for some
+	 *                               reason.
+	 */
+	public static void readFromFile(final String csvFilePath, final Consumer<Transaction> consumer)
+			throws IOException {
 		try (InputStream resource = TransactionCsvReader.class.getResourceAsStream(csvFilePath)) {
-			return new BufferedReader(new InputStreamReader(resource, StandardCharsets.UTF_8))//
-					.lines().skip(1)// Skip header.
-					.map(TransactionCsvReader::fromSingleLine)//
-					.collect(Collectors.toUnmodifiableList());
+			if (resource == null) {
+				throw new FileNotFoundException(csvFilePath + " is not on the classpath.");
+			}
+			read(resource, csvFilePath.endsWith(GZIP_SUFFIX), consumer);
+		}
+	}
+
+	/**
+	 * Read transactions one at a time from a file on the file system rather than
+	 * the classpath.
+	 * 
+	 * @param csvFile  comma separated value file containing transaction data;
+	 *                 gzipped if its name ends with <code>.gz</code>.
+	 * @param consumer receives each {@link Transaction} in the same order in which
+	 *                 they appear in the file
+	 * @throws IOException if we cannot read from the file for some reason.
+	 */
+	public static void readFromPath(final Path csvFile, final Consumer<Transaction> consumer) throws IOException {
+		try (InputStream file = Files.newInputStream(csvFile)) {
+			read(file, csvFile.getFileName().toString().endsWith(GZIP_SUFFIX), consumer);
+		}
+	}
+
+	/**
+	 * Read the lines of a file on the file system without parsing them, for callers
+	 * that only need a field or two of each; see {@link #fieldsOf(String)}.
+	 * 
+	 * @param csvFile  comma separated value file containing transaction data;
+	 *                 gzipped if its name ends with <code>.gz</code>.
+	 * @param consumer receives each line but the header and blank lines, in the
+	 *                 order in which they appear in the file
+	 * @throws IOException if we cannot read from the file for some reason.
+	 */
+	static void readLinesFromPath(final Path csvFile, final Consumer<String> consumer) throws IOException {
+		try (InputStream file = Files.newInputStream(csvFile);
+				InputStream in = csvFile.getFileName().toString().endsWith(GZIP_SUFFIX) ? new GZIPInputStream(file)
+						: file;
+				BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			lines.readLine(); // Skip header.
+			for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+				if (!line.isBlank()) {
+					consumer.accept(line);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param in       comma separated value data, closed by the caller
+	 * @param gzipped  true if <code>in</code> is gzipped
+	 * @param consumer receives each {@link Transaction} in the same order in which
+	 *                 they appear in <code>in</code>
+	 * @throws IOException if we cannot read from <code>in</code> for some reason.
+	 */
+	private static void read(final InputStream in, final boolean gzipped, final Consumer<Transaction> consumer)
+			throws IOException {
+		if (gzipped) {
+			GzipCsvPipeline.read(in, consumer);
+			return;
 		}
+		new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))//
+				.lines().skip(1)// Skip header.
+				.filter(line -> !line.isBlank())//
+				.map(TransactionCsvReader::fromSingleLine)//
+				.forEachOrdered(consumer);
 	}
 
 	/**
@@ -63,8 +153,23 @@ public static List<Transaction> readFromFile(final String csvFilePath) throws IO
 	 * @return {@link Transaction} from those values in <code>csvLine</code>
 	 */
 	public static Transaction fromSingleLine(final String csvLine) {
+		return fromFields(fieldsOf(csvLine));
+	}
 
-		String[] fields = Arrays.stream(csvLine.split(",")).map(String::trim).toArray(String[]::new);
+	/**
+	 * @param csvLine single line of a CSV file
+	 * @return values in <code>csvLine</code>, trimmed, indexed by the
+	 *         <code>INDEX_</code> constants
+	 */
+	static String[] fieldsOf(final String csvLine) {
+		return Arrays.stream(csvLine.split(",")).map(String::trim).toArray(String[]::new);
+	}
+
+	/**
+	 * @param fields values from a single line of a CSV file
+	 * @return {@link Transaction} from those values
+	 */
+	static Transaction fromFields(final String[] fields) {
 
 		TransactionType transactionType = TransactionType.valueOf(fields[INDEX_TRANSACTION_TYPE]);
 
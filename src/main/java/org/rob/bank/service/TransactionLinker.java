@@ -0,0 +1,157 @@
+package org.rob.bank.service;
+
+import static org.rob.bank.model.TransactionType.REVERSAL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.rob.bank.model.Transaction;
+import org.rob.bank.service.model.IntegrityIssue;
+import org.rob.bank.service.model.IntegrityIssue.Kind;
+
+/**
+ * Links every reversal to the transaction it reverses before the data is
+ * queried, checking integrity on the way: duplicate transaction IDs, reversals
+ * of unknown or later transactions, reversals of reversals and reversals that
+ * do not match what they reverse.
+ * <p>
+ * Two passes over the transactions, each in parallel: the first maps each
+ * transaction ID to the position it first appears at, the second resolves and
+ * checks each reversal through that map. Both are linear in the number of
+ * transactions.
+ */
+public final class TransactionLinker {
+
+	/**
+	 * What to do with transactions that have an integrity issue.
+	 */
+	public enum Policy {
+
+		/**
+		 * Report the issue and keep the transaction, so answers are as they would be
+		 * without linking.
+		 */
+		FLAG,
+
+		/**
+		 * Report the issue and leave the transaction out.
+		 */
+		QUARANTINE;
+	}
+
+	/**
+	 * Not for instantiation.
+	 */
+	private TransactionLinker() {
+	}
+
+	/**
+	 * @param transactions in the order they were recorded
+	 * @param policy       what to do with transactions that have an integrity
+	 *                     issue
+	 * @return transactions linked and ready to query, with every issue found
+	 */
+	public static LinkedTransactions link(final List<Transaction> transactions, final Policy policy) {
+		int count = transactions.size();
+
+		// Position each transaction ID first appears at; later ones are duplicates.
+		Map<String, Integer> firstPositions = new ConcurrentHashMap<>(Math.max(16, count));
+		IntStream.range(0, count).parallel()//
+				.forEach(position -> firstPositions.merge(transactions.get(position).getTransactionId(), position,
+						Math::min));
+
+		// Resolve each reversal to the position of what it reverses, and check both.
+		int[] originals = new int[count];
+		IntegrityIssue[] issues = new IntegrityIssue[count];
+		IntStream.range(0, count).parallel()//
+				.forEach(position -> issues[position] = link(transactions, firstPositions, position, originals));
+
+		List<IntegrityIssue> allIssues = Collections.unmodifiableList(Arrays.stream(issues)//
+				.filter(Objects::nonNull)//
+				.collect(Collectors.toList()));
+		if (policy == Policy.FLAG || allIssues.isEmpty()) {
+			return new LinkedTransactions(Collections.unmodifiableList(new ArrayList<>(transactions)), originals,
+					List.of(), allIssues);
+		}
+
+		// Leave out transactions with issues, renumbering what reversals point at.
+		int[] newPositions = new int[count];
+		List<Transaction> accepted = new ArrayList<>(count - allIssues.size());
+		List<Transaction> quarantined = new ArrayList<>(allIssues.size());
+		for (int position = 0; position < count; position++) {
+			if (issues[position] == null) {
+				newPositions[position] = accepted.size();
+				accepted.add(transactions.get(position));
+			} else {
+				newPositions[position] = -1;
+				quarantined.add(transactions.get(position));
+			}
+		}
+		int[] acceptedOriginals = new int[accepted.size()];
+		for (int position = 0; position < count; position++) {
+			if (newPositions[position] >= 0) {
+				int original = originals[position];
+				acceptedOriginals[newPositions[position]] = original < 0 ? -1 : newPositions[original];
+			}
+		}
+		return new LinkedTransactions(Collections.unmodifiableList(accepted), acceptedOriginals,
+				Collections.unmodifiableList(quarantined), allIssues);
+	}
+
+	/**
+	 * @param transactions   in the order they were recorded
+	 * @param firstPositions position each transaction ID first appears at
+	 * @param position       position of the transaction to link
+	 * @param originals      where to record the position of the transaction it
+	 *                       reverses; -1 if none before it
+	 * @return integrity issue with the transaction; null if none
+	 */
+	private static IntegrityIssue link(final List<Transaction> transactions,
+			final Map<String, Integer> firstPositions, final int position, final int[] originals) {
+		Transaction transaction = transactions.get(position);
+		originals[position] = -1;
+		IntegrityIssue issue = null;
+		if (transaction.getTransactionType().equals(REVERSAL)) {
+			Integer original = firstPositions.get(transaction.getRelatedTransaction());
+			if (original == null) {
+				issue = issue(Kind.UNKNOWN_RELATED_TRANSACTION, transaction, position, -1);
+			} else if (original > position) {
+				issue = issue(Kind.RELATED_TRANSACTION_LATER, transaction, position, original);
+			} else {
+				originals[position] = original;
+				Transaction reversed = transactions.get(original);
+				if (reversed.getTransactionType().equals(REVERSAL)) {
+					issue = issue(Kind.REVERSAL_OF_REVERSAL, transaction, position, original);
+				} else if (Double.compare(reversed.getAmount(), transaction.getAmount()) != 0
+						|| !reversed.getFromAccountId().equals(transaction.getFromAccountId())
+						|| !reversed.getToAccountId().equals(transaction.getToAccountId())) {
+					issue = issue(Kind.MISMATCHED_REVERSAL, transaction, position, original);
+				}
+			}
+		}
+		// A duplicate is the more fundamental problem, so it is the one reported.
+		int first = firstPositions.get(transaction.getTransactionId());
+		return first == position ? issue : issue(Kind.DUPLICATE_ID, transaction, position, first);
+	}
+
+	/**
+	 * @param kind            what is wrong
+	 * @param transaction     transaction it is wrong with
+	 * @param position        position of the transaction
+	 * @param relatedPosition position of the transaction it conflicts with; -1 if
+	 *                        none
+	 * @return the issue
+	 */
+	private static IntegrityIssue issue(final Kind kind, final Transaction transaction, final int position,
+			final int relatedPosition) {
+		return new IntegrityIssue(kind, position, transaction.getTransactionId(), relatedPosition);
+	}
+
+}
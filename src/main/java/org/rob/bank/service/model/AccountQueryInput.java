@@ -35,6 +35,23 @@ public final class AccountQueryInput {
 	@NonNull
 	private final LocalDateTime to;
 
+	/**
+	 * Point in time to report as of, as the account stood then: only transactions
+	 * and reversals created before it count, so a payment reversed later is still
+	 * included. Null to count everything. Unlike the point in time given to
+	 * <code>AccountData.retrieveBalanceAsOf</code>, which only cuts off payments by
+	 * when they were created and counts every reversal known now.
+	 */
+	private final LocalDateTime asOf;
+
+	/**
+	 * @return end of the transactions counted, exclusive: the to date, or the as-of
+	 *         time if that is earlier
+	 */
+	public LocalDateTime getEnd() {
+		return asOf != null && asOf.isBefore(to) ? asOf : to;
+	}
+
 	/**
 	 * Validate state of query input.
 	 */
@@ -51,6 +68,8 @@ public static class AccountQueryInputBuilder {
 
 		private LocalDateTime to;
 
+		private LocalDateTime asOf;
+
 		public AccountQueryInputBuilder fromString(final String from) {
 			this.from = LocalDateTime.parse(from, DATE_FORMAT);
 			return this;
@@ -61,6 +80,11 @@ public AccountQueryInputBuilder toString(final String to) {
 			return this;
 		}
 
+		public AccountQueryInputBuilder asOfString(final String asOf) {
+			this.asOf = LocalDateTime.parse(asOf, DATE_FORMAT);
+			return this;
+		}
+
 		public AccountQueryInput build() {
 			AccountQueryInput accountQueryInput = this.buildInternal();
 			accountQueryInput.validate();
@@ -0,0 +1,76 @@
+package org.rob.bank.service.model;
+
+import java.time.Duration;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+
+/**
+ * Input to a query for an account's relative balance in each bucket of a date
+ * range, e.g. per day across a quarter.
+ */
+@Data
+@Builder(toBuilder = true, buildMethodName = "buildInternal")
+@EqualsAndHashCode
+public final class BalanceSeriesQueryInput {
+
+	/**
+	 * Most buckets a date range may be split into, so a long range with narrow
+	 * buckets is refused rather than exhausting memory.
+	 */
+	public static final int MAX_BUCKETS = 100_000;
+
+	/**
+	 * Account and whole date range being examined.
+	 */
+	@NonNull
+	private final AccountQueryInput range;
+
+	/**
+	 * Width of each bucket the date range is split into.
+	 */
+	@NonNull
+	private final Duration bucketWidth;
+
+	/**
+	 * Validate state of query input.
+	 */
+	public void validate() {
+		if (bucketWidth.isNegative() || bucketWidth.isZero()) {
+			throw new IllegalStateException("Bucket width [" + bucketWidth + "] must be positive.");
+		}
+		// Narrowest width giving at most MAX_BUCKETS, rounded up to the nanosecond.
+		Duration length = Duration.between(range.getFrom(), range.getTo());
+		Duration narrowest = length.dividedBy(MAX_BUCKETS);
+		if (!narrowest.multipliedBy(MAX_BUCKETS).equals(length)) {
+			narrowest = narrowest.plusNanos(1);
+		}
+		if (bucketWidth.compareTo(narrowest) < 0) {
+			throw new IllegalStateException("Bucket width [" + bucketWidth + "] splits the date range into more than "
+					+ MAX_BUCKETS + " buckets; it must be at least [" + narrowest + "].");
+		}
+	}
+
+	/**
+	 * @return number of buckets the date range is split into, counting a last
+	 *         bucket cut short
+	 */
+	public int getBucketCount() {
+		Duration length = Duration.between(range.getFrom(), range.getTo());
+		long whole = length.dividedBy(bucketWidth);
+		return (int) (bucketWidth.multipliedBy(whole).equals(length) ? whole : whole + 1);
+	}
+
+	/** Custom builder to provide validation. */
+	public static class BalanceSeriesQueryInputBuilder {
+
+		public BalanceSeriesQueryInput build() {
+			BalanceSeriesQueryInput balanceSeriesQueryInput = this.buildInternal();
+			balanceSeriesQueryInput.validate();
+			return balanceSeriesQueryInput;
+		}
+	}
+
+}
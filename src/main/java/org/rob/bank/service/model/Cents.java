@@ -0,0 +1,40 @@
+package org.rob.bank.service.model;
+
+/**
+ * Converts dollar amounts to and from whole cents, so totals can be kept
+ * exactly as <code>long</code> counts of cents rather than as sums of doubles
+ * that depend on the order they were added in.
+ * <p>
+ * Converting back gives the double nearest the exact total, so every way of
+ * arriving at the same total gives the same double.
+ */
+public final class Cents {
+
+	/**
+	 * Cents in a dollar.
+	 */
+	private static final double CENTS_PER_DOLLAR = 100.0;
+
+	/**
+	 * Not for instantiation.
+	 */
+	private Cents() {
+	}
+
+	/**
+	 * @param dollars dollars and cents
+	 * @return the amount in whole cents, rounded to the nearest cent
+	 */
+	public static long of(final double dollars) {
+		return Math.round(dollars * CENTS_PER_DOLLAR);
+	}
+
+	/**
+	 * @param cents whole cents
+	 * @return the amount in dollars, nearest the exact value
+	 */
+	public static double toDollars(final long cents) {
+		return cents / CENTS_PER_DOLLAR;
+	}
+
+}
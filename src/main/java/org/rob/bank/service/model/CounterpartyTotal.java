@@ -0,0 +1,35 @@
+package org.rob.bank.service.model;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Net amount and count of un-reversed transactions between an account and one
+ * of its counterparties over a given date range.
+ */
+@Data
+@EqualsAndHashCode
+public final class CounterpartyTotal {
+
+	/**
+	 * ID of the account on the other side of the transactions.
+	 */
+	private final String counterpartyAccountId;
+
+	/**
+	 * Net amount received from the counterparty; negative if more was paid to it.
+	 */
+	private final Double amount;
+
+	/**
+	 * Number of un-reversed transactions with the counterparty.
+	 */
+	private final Integer countTransactions;
+
+	@Override
+	public String toString() {
+		return String.format("%s: %s in %d transactions", counterpartyAccountId, DollarFormat.format(amount),
+				countTransactions);
+	}
+
+}
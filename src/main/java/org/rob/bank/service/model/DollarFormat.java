@@ -0,0 +1,119 @@
+package org.rob.bank.service.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+
+/**
+ * Formats dollar amounts as <code>$#,##0.00;-$#,##0.00</code> would, without
+ * the shared state that makes {@link DecimalFormat} unsafe to use from
+ * several threads at once, and appending straight into an existing builder.
+ * <p>
+ * Rounds the exact value of the amount half to even, as {@link DecimalFormat}
+ * does by default. Amounts in whole cents, as every balance is, are formatted
+ * without allocating anything but the characters appended; only amounts within
+ * rounding error of half a cent are rounded exactly with {@link BigDecimal}.
+ * Amounts that are not finite, or so large that a double is coarser than half a
+ * cent, are left to {@link DecimalFormat}, which rounds their shortest decimal
+ * form instead.
+ */
+public final class DollarFormat {
+
+	/**
+	 * Cents in a dollar.
+	 */
+	private static final int CENTS_PER_DOLLAR = 100;
+
+	/**
+	 * Fraction of a cent exactly halfway between two cents.
+	 */
+	private static final double HALF_CENT = 0.5;
+
+	/**
+	 * Digits between group separators.
+	 */
+	private static final int GROUP = 1_000;
+
+	/**
+	 * Amounts at or above this many dollars are formatted by {@link DecimalFormat};
+	 * below it, a double is finer than half a cent.
+	 */
+	private static final double LARGEST_CENTS_AMOUNT = 1e13;
+
+	/**
+	 * Pattern matched.
+	 */
+	private static final String PATTERN = "$#,##0.00;-$#,##0.00";
+
+	/**
+	 * Not for instantiation.
+	 */
+	private DollarFormat() {
+	}
+
+	/**
+	 * @param amount dollars and cents
+	 * @return formatted amount, e.g. <code>-$1,234.50</code>
+	 */
+	public static String format(final double amount) {
+		return appendTo(new StringBuilder(16), amount).toString();
+	}
+
+	/**
+	 * @param out    where to append the formatted amount
+	 * @param amount dollars and cents
+	 * @return <code>out</code>
+	 */
+	public static StringBuilder appendTo(final StringBuilder out, final double amount) {
+		if (!(Math.abs(amount) < LARGEST_CENTS_AMOUNT)) {
+			// NaN, infinite or huge: rare enough for a format of its own.
+			return out.append(new DecimalFormat(PATTERN).format(amount));
+		}
+		// Sign comes from the amount before rounding, so -0.001 is -$0.00 as it is
+		// with DecimalFormat.
+		if (Math.copySign(1.0, amount) < 0) {
+			out.append('-');
+		}
+		long cents = toCents(Math.abs(amount));
+		out.append('$');
+		appendGrouped(out, cents / CENTS_PER_DOLLAR);
+		int remainder = (int) (cents % CENTS_PER_DOLLAR);
+		return out.append('.').append((char) ('0' + remainder / 10)).append((char) ('0' + remainder % 10));
+	}
+
+	/**
+	 * @param dollars non-negative dollars and cents, less than
+	 *                {@link #LARGEST_CENTS_AMOUNT}
+	 * @return <code>dollars</code> in cents, rounded half to even from the exact
+	 *         value
+	 */
+	private static long toCents(final double dollars) {
+		// Multiplying by 100 is off by at most half an ulp of the product, so only a
+		// product that close to a tie can round the other way from the exact value.
+		double scaled = dollars * CENTS_PER_DOLLAR;
+		double whole = Math.floor(scaled);
+		double fraction = scaled - whole;
+		if (Math.abs(fraction - HALF_CENT) > Math.ulp(scaled)) {
+			return (long) whole + (fraction > HALF_CENT ? 1 : 0);
+		}
+		// Round the exact binary value, tipping values such as 894.055 the right way.
+		return new BigDecimal(dollars).setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+	}
+
+	/**
+	 * @param out     where to append
+	 * @param dollars non-negative whole dollars, appended with a comma every three
+	 *                digits
+	 */
+	private static void appendGrouped(final StringBuilder out, final long dollars) {
+		if (dollars < GROUP) {
+			out.append(dollars);
+			return;
+		}
+		appendGrouped(out, dollars / GROUP);
+		int group = (int) (dollars % GROUP);
+		out.append(',').append((char) ('0' + group / 100)).append((char) ('0' + group / 10 % 10))
+				.append((char) ('0' + group % 10));
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.rob.bank.service.model;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Something wrong with one transaction, found while linking reversals to the
+ * transactions they reverse.
+ */
+@Data
+@EqualsAndHashCode
+public final class IntegrityIssue {
+
+	/**
+	 * Kinds of things that can be wrong.
+	 */
+	public enum Kind {
+
+		/**
+		 * Transaction ID already used by an earlier transaction.
+		 */
+		DUPLICATE_ID,
+
+		/**
+		 * Reversal of a transaction ID that does not appear anywhere.
+		 */
+		UNKNOWN_RELATED_TRANSACTION,
+
+		/**
+		 * Reversal recorded before the transaction it reverses.
+		 */
+		RELATED_TRANSACTION_LATER,
+
+		/**
+		 * Reversal of another reversal.
+		 */
+		REVERSAL_OF_REVERSAL,
+
+		/**
+		 * Reversal whose amount or accounts differ from the transaction it reverses.
+		 */
+		MISMATCHED_REVERSAL;
+	}
+
+	/**
+	 * What is wrong.
+	 */
+	private final Kind kind;
+
+	/**
+	 * Position of the transaction in the data loaded, from 0.
+	 */
+	private final int position;
+
+	/**
+	 * ID of the transaction.
+	 */
+	private final String transactionId;
+
+	/**
+	 * Position of the transaction it conflicts with: the earlier one with the same
+	 * ID, or the one it reverses; -1 if there is none.
+	 */
+	private final int relatedPosition;
+
+	@Override
+	public String toString() {
+		return String.format("%s: transaction %s at position %d%s", kind, transactionId, position,
+				relatedPosition < 0 ? "" : " (see position " + relatedPosition + ")");
+	}
+
+}
@@ -0,0 +1,41 @@
+package org.rob.bank.service.model;
+
+import static org.rob.bank.controller.App.DATE_FORMAT;
+
+import java.time.LocalDateTime;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * How far a background load of transactions has got.
+ */
+@Data
+@EqualsAndHashCode
+public final class LoadProgress {
+
+	/**
+	 * Number of transactions loaded so far.
+	 */
+	private final long transactionsLoaded;
+
+	/**
+	 * Created date of the last transaction loaded; null until the first one is
+	 * loaded. Transactions are recorded in order, so every transaction created
+	 * before this has been loaded.
+	 */
+	private final LocalDateTime highWaterMark;
+
+	/**
+	 * True once every transaction has been loaded.
+	 */
+	private final boolean complete;
+
+	@Override
+	public String toString() {
+		return String.format("Loaded %d transactions%s%s.", transactionsLoaded,
+				highWaterMark == null ? "" : " up to " + DATE_FORMAT.format(highWaterMark), //
+				complete ? " (complete)" : "");
+	}
+
+}
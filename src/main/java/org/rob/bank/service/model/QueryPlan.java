@@ -0,0 +1,90 @@
+package org.rob.bank.service.model;
+
+import java.util.Map;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * How a relative balance query will be answered, and why: the access path
+ * chosen, the estimated cost of every path considered and the statistics the
+ * estimates came from.
+ */
+@Data
+@EqualsAndHashCode
+public final class QueryPlan {
+
+	/**
+	 * Ways of finding the transactions a query needs.
+	 */
+	public enum AccessPath {
+
+		/**
+		 * Seek to the start of the date range with the sparse time index over all
+		 * transactions, then walk every transaction, of every account, to the end.
+		 */
+		FULL_SCAN,
+
+		/**
+		 * Binary search the account's own transactions to the start of the date
+		 * range and walk them to the end.
+		 */
+		ACCOUNT_INDEX,
+
+		/**
+		 * Take the account's balance as of the start of the date range from the end
+		 * of it, each found from the nearest balance checkpoint.
+		 */
+		CHECKPOINTS;
+	}
+
+	/**
+	 * Cheapest access path; the one that will be used.
+	 */
+	private final AccessPath accessPath;
+
+	/**
+	 * Estimated cost of each access path considered, in transactions visited.
+	 */
+	private final Map<AccessPath, Double> estimatedCosts;
+
+	/**
+	 * Number of transactions of all accounts.
+	 */
+	private final int totalTransactions;
+
+	/**
+	 * Number of transactions to or from the account.
+	 */
+	private final int accountTransactions;
+
+	/**
+	 * Estimated number of the account's transactions in the date range, from how
+	 * densely they are spread over time.
+	 */
+	private final double estimatedRangeTransactions;
+
+	/**
+	 * Share of the account's transactions that are reversals, which adds to the
+	 * cost of checking each for a reversal.
+	 */
+	private final double reversalRate;
+
+	/**
+	 * @return estimated cost of the chosen access path
+	 */
+	public double getEstimatedCost() {
+		return estimatedCosts.get(accessPath);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder explain = new StringBuilder(String.format("%s (cost %.1f)%n", accessPath, getEstimatedCost()));
+		estimatedCosts.forEach(
+				(path, cost) -> explain.append(String.format("  considered %s (cost %.1f)%n", path, cost)));
+		return explain.append(String.format(
+				"  transactions: %d total, %d for account, %.1f estimated in range; reversal rate %.3f%n",
+				totalTransactions, accountTransactions, estimatedRangeTransactions, reversalRate)).toString();
+	}
+
+}
@@ -1,7 +1,5 @@
 package org.rob.bank.service.model;
 
-import java.text.DecimalFormat;
-
 import org.rob.bank.model.Transaction;
 import org.rob.bank.model.TransactionType;
 
@@ -11,16 +9,14 @@
 /**
  * Relative account balance (from examining transactions for an account over a
  * given date range) and count of un-reversed transactions during that period.
+ * <p>
+ * Amounts are added in whole {@link Cents}, so the same transactions give the
+ * same amount whatever order they are added in.
  */
 @Data
 @EqualsAndHashCode
 public final class RelativeBalanceResult {
 
-	/**
-	 * Format dollars amounts.
-	 */
-	private static final DecimalFormat DOLLAR_FORMAT = new DecimalFormat("$#,##0.00;-$#,##0.00");
-
 	/**
 	 * Amount of the relative balance for the period.
 	 */
@@ -31,12 +27,17 @@ public final class RelativeBalanceResult {
 	 */
 	private final Integer countTransactions;
 
+	/**
+	 * True if the result was calculated while transactions were still loading, so
+	 * a reversal not yet read may still cancel one of the transactions counted.
+	 */
+	private final boolean provisional;
+
 	/**
 	 * Creates with starting count and amount of 0.
 	 */
 	public RelativeBalanceResult() {
-		this.amount = 0.0;
-		this.countTransactions = 0;
+		this(0.0, 0);
 	}
 
 	/**
@@ -46,8 +47,20 @@ public RelativeBalanceResult() {
 	 * @param countTransactions starting count
 	 */
 	public RelativeBalanceResult(final Double amount, final Integer countTransactions) {
+		this(amount, countTransactions, false);
+	}
+
+	/**
+	 * Creates with given count, amount and provisional flag.
+	 * 
+	 * @param amount            starting amount
+	 * @param countTransactions starting count
+	 * @param provisional       true if the result may change once loading finishes
+	 */
+	public RelativeBalanceResult(final Double amount, final Integer countTransactions, final boolean provisional) {
 		this.amount = amount;
 		this.countTransactions = countTransactions;
+		this.provisional = provisional;
 	}
 
 	/**
@@ -62,9 +75,10 @@ public RelativeBalanceResult addTransaction(final AccountQueryInput query, final
 		}
 		// If transaction is to this account, it's an amount received; otherwise it's a payment out.
 		if (query.getAccountId().equals(transaction.getToAccountId())) {
-			return new RelativeBalanceResult(amount + transaction.getAmount(), countTransactions + 1);
+			return new RelativeBalanceResult(add(amount, transaction.getAmount()), countTransactions + 1, provisional);
 		} else {
-			return new RelativeBalanceResult(amount - transaction.getAmount(), countTransactions + 1);
+			return new RelativeBalanceResult(add(amount, -transaction.getAmount()), countTransactions + 1,
+					provisional);
 		}
 	}
 
@@ -75,15 +89,33 @@ public RelativeBalanceResult addTransaction(final AccountQueryInput query, final
 	 */
 	public RelativeBalanceResult addResult(final RelativeBalanceResult result) {
 		return new RelativeBalanceResult(//
-				amount + result.getAmount(), //
-				countTransactions + result.getCountTransactions());
+				add(amount, result.getAmount()), //
+				countTransactions + result.getCountTransactions(), //
+				provisional || result.isProvisional());
+	}
+
+	/**
+	 * @return copy of this result flagged as provisional
+	 */
+	public RelativeBalanceResult toProvisional() {
+		return new RelativeBalanceResult(amount, countTransactions, true);
+	}
+
+	/**
+	 * @param augend dollars and cents
+	 * @param addend dollars and cents
+	 * @return their sum, to the cent
+	 */
+	private static double add(final double augend, final double addend) {
+		return Cents.toDollars(Cents.of(augend) + Cents.of(addend));
 	}
 
 	@Override
 	public String toString() {
 		return String.format("Relative balance for the period is: %s%n" //
-				+ "Number of transactions included is: %d%n", //
-				DOLLAR_FORMAT.format(amount).toString(), countTransactions);
+				+ "Number of transactions included is: %d%n%s", //
+				DollarFormat.format(amount), countTransactions, //
+				provisional ? String.format("Result is provisional: transactions are still loading.%n") : "");
 	}
 
 }
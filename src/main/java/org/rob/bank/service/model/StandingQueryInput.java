@@ -0,0 +1,83 @@
+package org.rob.bank.service.model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+
+/**
+ * Input to a standing query: an account's relative balance over a window of
+ * time, kept up to date as transactions are appended.
+ * <p>
+ * The window is either fixed, from <code>from</code> (inclusive) to
+ * <code>to</code> (exclusive), or sliding: the <code>window</code> of time up to
+ * and including the latest transaction appended for any account.
+ */
+@Data
+@Builder(toBuilder = true, buildMethodName = "buildInternal")
+@EqualsAndHashCode
+public final class StandingQueryInput {
+
+	/**
+	 * ID of the account being examined.
+	 */
+	@NonNull
+	private final String accountId;
+
+	/**
+	 * Start of a fixed window, inclusive; null for a sliding window.
+	 */
+	private final LocalDateTime from;
+
+	/**
+	 * End of a fixed window, exclusive; null for a sliding window.
+	 */
+	private final LocalDateTime to;
+
+	/**
+	 * Width of a sliding window; null for a fixed window.
+	 */
+	private final Duration window;
+
+	/**
+	 * @return true if the window slides forward with each transaction appended
+	 */
+	public boolean isSliding() {
+		return window != null;
+	}
+
+	/**
+	 * Validate state of query input.
+	 */
+	public void validate() {
+		if (window == null) {
+			if (from == null || to == null) {
+				throw new IllegalStateException("Need both from and to dates, or a sliding window.");
+			}
+			if (!from.isBefore(to)) {
+				throw new IllegalStateException("From date [" + from + "] must be before to date [" + to + "].");
+			}
+		} else {
+			if (from != null || to != null) {
+				throw new IllegalStateException("Need from and to dates or a sliding window, not both.");
+			}
+			if (window.isNegative() || window.isZero()) {
+				throw new IllegalStateException("Window [" + window + "] must be positive.");
+			}
+		}
+	}
+
+	/** Custom builder to provide validation. */
+	public static class StandingQueryInputBuilder {
+
+		public StandingQueryInput build() {
+			StandingQueryInput standingQueryInput = this.buildInternal();
+			standingQueryInput.validate();
+			return standingQueryInput;
+		}
+	}
+
+}
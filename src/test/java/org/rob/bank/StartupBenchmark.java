@@ -0,0 +1,139 @@
+package org.rob.bank;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures time to first result of short-lived batch runs of the app: from
+ * launching a JVM to reading the first line of the result it prints. Run by
+ * the <code>fast-start</code> build profile once the class data sharing
+ * archive and data snapshot are built.
+ * <p>
+ * Arguments: the application jar, the class data sharing archive, the data
+ * snapshot, and optionally the number of runs to time and the target in
+ * milliseconds. Exits with status 1 if the fastest start-up path misses the
+ * target.
+ */
+public final class StartupBenchmark {
+
+	/**
+	 * Runs timed for each way of starting, by default.
+	 */
+	private static final int DEFAULT_RUNS = 10;
+
+	/**
+	 * Target time to first result in milliseconds, by default.
+	 */
+	private static final long DEFAULT_TARGET_MILLIS = 200;
+
+	/**
+	 * Typical query: account ID, from date and to date.
+	 */
+	private static final List<String> QUERY = List.of("ACC334455", "20/10/2018 12:00:00", "20/10/2018 19:00:00");
+
+	/**
+	 * Start of the first line of a result.
+	 */
+	private static final String RESULT = "Relative balance";
+
+	/**
+	 * Not for instantiation.
+	 */
+	private StartupBenchmark() {
+	}
+
+	/**
+	 * @param args jar, archive, snapshot, then optionally runs and target
+	 *             milliseconds
+	 * @throws Exception if a run fails
+	 */
+	public static void main(final String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: StartupBenchmark <jar> <archive.jsa> <data.snapshot> [runs] [targetMillis]");
+			System.exit(2);
+		}
+		String jar = args[0];
+		String archive = args[1];
+		String snapshot = args[2];
+		int runs = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_RUNS;
+		long targetMillis = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_TARGET_MILLIS;
+
+		time("CSV, no archive", runs, List.of("-cp", jar));
+		time("Snapshot, no archive", runs, List.of("-cp", jar, "--data", snapshot));
+		long fastest = time("Snapshot and archive", runs, List.of("-XX:SharedArchiveFile=" + archive,
+				"-Xshare:on", "-XX:TieredStopAtLevel=1", "-cp", jar, "--data", snapshot));
+
+		System.out.printf("Target time to first result: %d ms; %s.%n", targetMillis,
+				fastest <= targetMillis ? "met" : "MISSED");
+		System.exit(fastest <= targetMillis ? 0 : 1);
+	}
+
+	/**
+	 * @param label   way of starting
+	 * @param runs    number of runs to time, after one untimed run
+	 * @param options JVM options and classpath, optionally followed by
+	 *                <code>--data</code> and a file for the app
+	 * @return median time to first result in milliseconds
+	 * @throws IOException          if a run cannot be launched
+	 * @throws InterruptedException if interrupted waiting for a run
+	 */
+	private static long time(final String label, final int runs, final List<String> options)
+			throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		int data = options.indexOf("--data");
+		command.addAll(data < 0 ? options : options.subList(0, data));
+		command.add("org.rob.bank.controller.App");
+		if (data >= 0) {
+			command.addAll(options.subList(data, options.size()));
+		}
+		command.addAll(QUERY);
+
+		// First run only warms the file system cache.
+		timeOnce(command);
+		long[] millis = new long[runs];
+		for (int run = 0; run < runs; run++) {
+			millis[run] = timeOnce(command);
+		}
+		Arrays.sort(millis);
+		long median = millis[runs / 2];
+		System.out.printf("%-22s median %4d ms, min %4d ms, max %4d ms over %d runs%n", label, median, millis[0],
+				millis[runs - 1], runs);
+		return median;
+	}
+
+	/**
+	 * @param command to launch the app
+	 * @return milliseconds from launch to the first line of the result
+	 * @throws IOException          if the run cannot be launched or fails
+	 * @throws InterruptedException if interrupted waiting for the run
+	 */
+	private static long timeOnce(final List<String> command) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		long elapsed = -1;
+		List<String> output = new ArrayList<>();
+		try (BufferedReader out = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			for (String line = out.readLine(); line != null; line = out.readLine()) {
+				if (elapsed < 0 && line.startsWith(RESULT)) {
+					elapsed = System.nanoTime() - start;
+				}
+				output.add(line);
+			}
+		}
+		if (process.waitFor() != 0 || elapsed < 0) {
+			throw new IOException("Run failed: " + command + System.lineSeparator()
+					+ String.join(System.lineSeparator(), output));
+		}
+		return TimeUnit.NANOSECONDS.toMillis(elapsed);
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.rob.bank.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.rob.bank.model.Transaction;
+import org.rob.bank.service.model.AccountQueryInput;
+import org.rob.bank.service.model.LoadProgress;
+import org.rob.bank.service.model.RelativeBalanceResult;
+
+/**
+ * Test that {@link AccountDataLoader} answers queries while loading.
+ */
+public final class AccountDataLoaderTest {
+
+	/**
+	 * Test file shared with {@link TransactionCsvReaderTest}.
+	 */
+	private static final String FILE = "/testData.csv";
+
+	/**
+	 * Test that a fully loaded file gives final results.
+	 *
+	 * @throws Exception if loading fails
+	 */
+	@Test
+	public void testLoadFromFile() throws Exception {
+		List<LoadProgress> progress = new CopyOnWriteArrayList<>();
+		AccountDataLoader loader = new AccountDataLoader(FILE, progress::add);
+		loader.start();
+		loader.awaitLoaded(10, TimeUnit.SECONDS);
+
+		AccountQueryInput input = AccountQueryInput.builder()//
+				.accountId("ACC334455")//
+				.fromString("20/10/2018 12:00:00")//
+				.toString("20/10/2018 19:00:00").build();
+		assertEquals(new RelativeBalanceResult(-25.0, 1),
+				loader.retrieveRelativeBalance(input, 0, TimeUnit.SECONDS));
+		assertEquals(5, loader.getProgress().getTransactionsLoaded());
+		assertTrue(progress.get(progress.size() - 1).isComplete(), "Last progress report should be complete.");
+	}
+
+	/**
+	 * Test that queries covered by what has been loaded are answered
+	 * provisionally, and others wait.
+	 *
+	 * @throws Exception if loading fails
+	 */
+	@Test
+	public void testProvisionalWhileLoading() throws Exception {
+		List<Transaction> transactions = TransactionCsvReader.readFromFile(FILE);
+		CountDownLatch firstThreeLoaded = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AccountDataLoader loader = new AccountDataLoader(consumer -> {
+			for (int index = 0; index < transactions.size(); index++) {
+				if (index == 3) {
+					firstThreeLoaded.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				consumer.accept(transactions.get(index));
+			}
+		}, progress -> {
+		}, 1);
+		loader.start();
+		assertTrue(firstThreeLoaded.await(10, TimeUnit.SECONDS), "Source should reach the fourth transaction.");
+
+		// TX10002 is in range, but the reversal of it has not been loaded yet.
+		AccountQueryInput covered = AccountQueryInput.builder()//
+				.accountId("ACC334455")//
+				.fromString("20/10/2018 12:00:00")//
+				.toString("20/10/2018 18:00:00").build();
+		assertEquals(new RelativeBalanceResult(-35.5, 2, true),
+				loader.retrieveRelativeBalance(covered, 10, TimeUnit.SECONDS));
+
+		AccountQueryInput notCovered = covered.toBuilder().toString("21/10/2018 12:00:00").build();
+		assertThrows(TimeoutException.class,
+				() -> loader.retrieveRelativeBalance(notCovered, 10, TimeUnit.MILLISECONDS),
+				"Query past what has been loaded should time out.");
+
+		release.countDown();
+		loader.awaitLoaded(10, TimeUnit.SECONDS);
+		RelativeBalanceResult result = loader.retrieveRelativeBalance(covered, 0, TimeUnit.SECONDS);
+		assertEquals(new RelativeBalanceResult(-25.0, 1), result);
+		assertFalse(result.isProvisional(), "Result should be final once loading completes.");
+	}
+
+}
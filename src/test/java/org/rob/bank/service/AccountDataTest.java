@@ -1,21 +1,46 @@
 package org.rob.bank.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.rob.bank.controller.App.DATE_FORMAT;
 import static org.rob.bank.model.TransactionType.PAYMENT;
 import static org.rob.bank.model.TransactionType.REVERSAL;
+import static org.rob.bank.service.TestTransactions.transaction;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.rob.bank.model.Transaction;
 import org.rob.bank.service.AccountData;
 import org.rob.bank.service.model.AccountQueryInput;
+import org.rob.bank.service.model.BalanceSeriesQueryInput;
+import org.rob.bank.service.model.CounterpartyTotal;
+import org.rob.bank.service.model.QueryPlan;
+import org.rob.bank.service.model.QueryPlan.AccessPath;
 import org.rob.bank.service.model.RelativeBalanceResult;
+import org.rob.bank.service.model.StandingQueryInput;
 
 /**
  * Test that the {@link AccountData} service queries transactional data as we
@@ -65,6 +90,49 @@ private static Stream<Arguments> dataForTestRetrieveRelativeBalance() {
 		AccountQueryInput inputNoSuchAccount = input998877LargeDateRange.toBuilder()//
 				.accountId("I can haz job plz?").build();
 
+		AccountQueryInput input33445AsOfBeforeReversal = input33445MediumDateRange.toBuilder()//
+				.asOfString("20/10/2018 19:00:00").build();
+
+		AccountQueryInput input33445AsOfReversal = input33445MediumDateRange.toBuilder()//
+				.asOfString("20/10/2018 19:45:00").build();
+
+		AccountQueryInput input33445AsOfAfterReversal = input33445MediumDateRange.toBuilder()//
+				.asOfString("20/10/2018 19:45:01").build();
+
+		AccountQueryInput input998877AsOfBeforeReversal = input998877LargeDateRange.toBuilder()//
+				.asOfString("20/10/2018 19:00:00").build();
+
+		AccountQueryInput input33445AsOfBeforeLaterPayment = input33445LargeDateRange.toBuilder()//
+				.asOfString("21/10/2018 09:00:00").build();
+
+		AccountQueryInput input33445AsOfStart = input33445LargeDateRange.toBuilder()//
+				.asOfString("20/10/2018 12:00:00").build();
+
+		AccountQueryInput inputACC778899AsOfMidRange = inputACC778899LargeDateRange.toBuilder()//
+				.asOfString("20/10/2018 18:00:00").build();
+
+		// A reversal only cancels a transaction recorded before it.
+		List<Transaction> reversalFirst = List.of(//
+				transaction("R1", "01/01/2018 00:01:00", REVERSAL, 10.0, "P1", "ACC1", "ACC2"), //
+				transaction("P1", "01/01/2018 00:02:00", PAYMENT, 10.0, null, "ACC1", "ACC2"));
+
+		AccountQueryInput inputACC1AllDates = AccountQueryInput.builder()//
+				.accountId("ACC1")//
+				.fromString("01/01/2018 00:00:00")//
+				.toString("02/01/2018 00:00:00").build();
+
+		// A reversal cancels every transaction recorded before it with the ID it
+		// names, but not one recorded after it.
+		List<Transaction> duplicateIds = List.of(//
+				transaction("P1", "01/01/2018 00:00:00", PAYMENT, 10.0, null, "ACC1", "ACC2"), //
+				transaction("P1", "01/01/2018 00:01:00", PAYMENT, 20.0, null, "ACC1", "ACC2"), //
+				transaction("X1", "01/01/2018 00:02:00", PAYMENT, 1.0, null, "ACC1", "ACC2"), //
+				transaction("R1", "01/01/2018 00:03:00", REVERSAL, 10.0, "P1", "ACC1", "ACC2"), //
+				transaction("P1", "01/01/2018 00:04:00", PAYMENT, 5.0, null, "ACC1", "ACC2"));
+
+		AccountQueryInput inputACC1BeforeLastDuplicate = inputACC1AllDates.toBuilder()//
+				.toString("01/01/2018 00:04:00").build();
+
 		return Stream.of(//
 				Arguments.of("ACC334455 One transaction.", dataSet1, input33445SmallDateRange,
 						new RelativeBalanceResult(-25.00, 1)) //
@@ -82,6 +150,26 @@ input998877LargeDateRange, new RelativeBalanceResult(-5.0, 1)) //
 						inputACC778899LargeDateRange, new RelativeBalanceResult(37.25, 3)) //
 				, Arguments.of("No such account.", dataSet1, //
 						inputNoSuchAccount, new RelativeBalanceResult()) //
+				, Arguments.of("ACC334455 As of before reversal.", dataSet1, //
+						input33445AsOfBeforeReversal, new RelativeBalanceResult(-35.5, 2)) //
+				, Arguments.of("ACC334455 As of the moment of reversal.", dataSet1, //
+						input33445AsOfReversal, new RelativeBalanceResult(-35.5, 2)) //
+				, Arguments.of("ACC334455 As of after reversal.", dataSet1, //
+						input33445AsOfAfterReversal, new RelativeBalanceResult(-25.0, 1)) //
+				, Arguments.of("ACC998877 As of before reversal.", dataSet1, //
+						input998877AsOfBeforeReversal, new RelativeBalanceResult(5.5, 2)) //
+				, Arguments.of("ACC334455 As of before a later payment.", dataSet1, //
+						input33445AsOfBeforeLaterPayment, new RelativeBalanceResult(-25.0, 1)) //
+				, Arguments.of("ACC334455 As of the start of the date range.", dataSet1, //
+						input33445AsOfStart, new RelativeBalanceResult()) //
+				, Arguments.of("ACC778899 As of the moment of a payment.", dataSet1, //
+						inputACC778899AsOfMidRange, new RelativeBalanceResult(25.0, 1)) //
+				, Arguments.of("ACC1 Reversal recorded before the payment it names.", reversalFirst, //
+						inputACC1AllDates, new RelativeBalanceResult(-10.0, 1)) //
+				, Arguments.of("ACC1 Duplicate IDs reversed together.", duplicateIds, //
+						inputACC1BeforeLastDuplicate, new RelativeBalanceResult(-1.0, 1)) //
+				, Arguments.of("ACC1 Duplicate ID recorded after the reversal.", duplicateIds, //
+						inputACC1AllDates, new RelativeBalanceResult(-6.0, 2)) //
 		);
 	}
 
@@ -135,7 +223,9 @@ private static List<Transaction> testTransactionsSet1() {
 
 	/**
 	 * Test that {@link AccountData#retrieveRelativeBalance(RelativeBalance)} is
-	 * correctly implemented.
+	 * correctly implemented, by every access path, with checkpoints close enough
+	 * together to be used, and that balances at the ends of the date range differ
+	 * by the same amount.
 	 * 
 	 * @param label          for test
 	 * @param sourceData     transactions that will be injected into service for
@@ -147,7 +237,580 @@ private static List<Transaction> testTransactionsSet1() {
 	@MethodSource("dataForTestRetrieveRelativeBalance")
 	public void testRetrieveRelativeBalance(final String label, final List<Transaction> sourceData,
 			final AccountQueryInput input, final RelativeBalanceResult expectedOutput) {
-		AccountData dataService = new AccountData(sourceData);
+		AccountData dataService = new AccountData(sourceData, 2);
 		assertEquals(expectedOutput, dataService.retrieveRelativeBalance(input), label);
+		for (AccessPath accessPath : AccessPath.values()) {
+			assertEquals(expectedOutput, dataService.retrieveRelativeBalance(input, accessPath),
+					label + " using " + accessPath);
+		}
+		if (input.getAsOf() == null) {
+			RelativeBalanceResult atStart = dataService.retrieveBalanceAsOf(input.getAccountId(), input.getFrom());
+			RelativeBalanceResult atEnd = dataService.retrieveBalanceAsOf(input.getAccountId(), input.getTo());
+			assertEquals(expectedOutput, new RelativeBalanceResult(atEnd.getAmount() - atStart.getAmount(),
+					atEnd.getCountTransactions() - atStart.getCountTransactions()), label + " from balances");
+		}
+	}
+
+	/**
+	 * @return data for
+	 *         {@link #testPlannerChoosesAccessPath(String, AccountQueryInput, AccessPath)}.
+	 */
+	private static Stream<Arguments> dataForTestPlannerChoosesAccessPath() {
+		return Stream.of(//
+				Arguments.of("Tiny window over dormant account.", AccountQueryInput.builder()//
+						.accountId("DORMANT")//
+						.fromString("01/03/2018 00:00:00")//
+						.toString("02/03/2018 00:00:00").build(), AccessPath.ACCOUNT_INDEX) //
+				, Arguments.of("Year over hot account.", AccountQueryInput.builder()//
+						.accountId("HOT")//
+						.fromString("01/01/2018 00:00:00")//
+						.toString("01/01/2019 00:00:00").build(), AccessPath.CHECKPOINTS) //
+				, Arguments.of("Months in the middle of a hot account.", AccountQueryInput.builder()//
+						.accountId("HOT")//
+						.fromString("09/04/2018 19:00:00")//
+						.toString("19/10/2018 16:00:00").build(), AccessPath.CHECKPOINTS) //
+				, Arguments.of("First hours of history.", AccountQueryInput.builder()//
+						.accountId("HOT")//
+						.fromString("01/01/2018 00:00:00")//
+						.toString("01/01/2018 05:00:00").build(), AccessPath.FULL_SCAN) //
+				, Arguments.of("No such account.", AccountQueryInput.builder()//
+						.accountId("NONE")//
+						.fromString("01/01/2018 00:00:00")//
+						.toString("01/01/2019 00:00:00").build(), AccessPath.ACCOUNT_INDEX) //
+		);
+	}
+
+	/**
+	 * Test that the planner picks the cheapest access path for the shape of the
+	 * query, and that every path gives the same answer.
+	 * 
+	 * @param label        for test
+	 * @param input        search criteria
+	 * @param expectedPath access path the planner should choose
+	 */
+	@ParameterizedTest(name = "#{index} - [{0}]")
+	@MethodSource("dataForTestPlannerChoosesAccessPath")
+	public void testPlannerChoosesAccessPath(final String label, final AccountQueryInput input,
+			final AccessPath expectedPath) {
+		// A payment in cents out of a hot account every hour, and two out of a dormant
+		// one.
+		LocalDateTime start = LocalDateTime.parse("01/01/2018 00:00:00", DATE_FORMAT);
+		List<Transaction> transactions = new ArrayList<>();
+		for (int hour = 0; hour < 10_000; hour++) {
+			LocalDateTime createdAt = start.plusHours(hour);
+			transactions.add(Transaction.builder()//
+					.transactionId("H" + hour)//
+					.fromAccountId("HOT")//
+					.toAccountId("OTHER")//
+					.createdAt(createdAt)//
+					.amount((hour * 7_919 % 100_000 + 1) / 100.0)//
+					.transactionType(PAYMENT)//
+					.build());
+			if (createdAt.getDayOfMonth() == 1 && createdAt.getHour() == 12 && createdAt.getMonthValue() % 6 == 3) {
+				transactions.add(Transaction.builder()//
+						.transactionId("D" + hour)//
+						.fromAccountId("DORMANT")//
+						.toAccountId("OTHER")//
+						.createdAt(createdAt)//
+						.amount(10.0)//
+						.transactionType(PAYMENT)//
+						.build());
+			}
+		}
+		AccountData dataService = new AccountData(transactions);
+
+		QueryPlan plan = dataService.explain(input);
+		assertEquals(expectedPath, plan.getAccessPath(), label + System.lineSeparator() + plan);
+
+		RelativeBalanceResult expected = dataService.retrieveRelativeBalance(input, AccessPath.FULL_SCAN);
+		for (AccessPath accessPath : AccessPath.values()) {
+			assertEquals(expected, dataService.retrieveRelativeBalance(input, accessPath),
+					label + " using " + accessPath);
+		}
+	}
+
+	/**
+	 * Test that the planner counts the reversal rate in the cost of checking each
+	 * of the account's transactions, and that every path still gives the same
+	 * answer over reversed payments.
+	 */
+	@Test
+	public void testPlannerWeighsReversals() {
+		// The same number of transactions at the same times, with every other one a
+		// reversal of the payment before it in the second set.
+		LocalDateTime start = LocalDateTime.parse("01/01/2018 00:00:00", DATE_FORMAT);
+		List<Transaction> payments = new ArrayList<>();
+		List<Transaction> reversed = new ArrayList<>();
+		for (int minute = 0; minute < 2_000; minute++) {
+			String createdAt = DATE_FORMAT.format(start.plusMinutes(minute));
+			payments.add(transaction("P" + minute, createdAt, PAYMENT, 1.25, null, "ACC1", "ACC2"));
+			reversed.add(minute % 2 == 0 ? payments.get(minute)
+					: transaction("R" + minute, createdAt, REVERSAL, 1.25, "P" + (minute - 1), "ACC1", "ACC2"));
+		}
+		AccountQueryInput input = AccountQueryInput.builder()//
+				.accountId("ACC1")//
+				.from(start.plusHours(5))//
+				.to(start.plusHours(10)).build();
+
+		QueryPlan paymentsPlan = new AccountData(payments).explain(input);
+		QueryPlan reversedPlan = new AccountData(reversed).explain(input);
+		assertEquals(0.5, reversedPlan.getReversalRate(), reversedPlan.toString());
+		for (AccessPath accessPath : AccessPath.values()) {
+			assertTrue(paymentsPlan.getEstimatedCosts().get(accessPath) < reversedPlan.getEstimatedCosts()
+					.get(accessPath), accessPath + System.lineSeparator() + paymentsPlan + reversedPlan);
+		}
+
+		AccountData dataService = new AccountData(reversed, 16);
+		for (AccessPath accessPath : AccessPath.values()) {
+			assertEquals(new RelativeBalanceResult(), dataService.retrieveRelativeBalance(input, accessPath),
+					"Using " + accessPath);
+		}
+	}
+
+	/**
+	 * @return data for
+	 *         {@link #testRetrieveRelativeBalanceSeries(String, BalanceSeriesQueryInput, List)}.
+	 */
+	private static Stream<Arguments> dataForTestRetrieveRelativeBalanceSeries() {
+
+		AccountQueryInput twoDays = AccountQueryInput.builder()//
+				.accountId("ACC334455")//
+				.fromString("20/10/2018 12:00:00")//
+				.toString("22/10/2018 12:00:00").build();
+
+		AccountQueryInput oneDay = twoDays.toBuilder().toString("21/10/2018 12:00:00").build();
+
+		AccountQueryInput sevenHours = twoDays.toBuilder().toString("20/10/2018 19:00:00").build();
+
+		AccountQueryInput empty = twoDays.toBuilder().toString("20/10/2018 12:00:00").build();
+
+		return Stream.of(//
+				Arguments.of("Daily buckets, one reversed.", //
+						BalanceSeriesQueryInput.builder().range(twoDays).bucketWidth(Duration.ofDays(1)).build(), //
+						List.of(new RelativeBalanceResult(-32.25, 2), new RelativeBalanceResult())) //
+				, Arguments.of("Six hour buckets, reversal in second.", //
+						BalanceSeriesQueryInput.builder().range(oneDay).bucketWidth(Duration.ofHours(6)).build(), //
+						List.of(new RelativeBalanceResult(-25.0, 1), new RelativeBalanceResult(),
+								new RelativeBalanceResult(), new RelativeBalanceResult(-7.25, 1))) //
+				, Arguments.of("Last bucket cut short.", //
+						BalanceSeriesQueryInput.builder().range(sevenHours).bucketWidth(Duration.ofHours(6)).build(), //
+						List.of(new RelativeBalanceResult(-25.0, 1), new RelativeBalanceResult())) //
+				, Arguments.of("Empty date range.", //
+						BalanceSeriesQueryInput.builder().range(empty).bucketWidth(Duration.ofHours(6)).build(), //
+						List.of()) //
+		);
+	}
+
+	/**
+	 * Test that {@link AccountData#retrieveRelativeBalanceSeries(BalanceSeriesQueryInput)}
+	 * splits the date range into buckets and agrees with
+	 * {@link AccountData#retrieveRelativeBalance(AccountQueryInput)} for each.
+	 * 
+	 * @param label          for test
+	 * @param input          search criteria
+	 * @param expectedOutput what we expect to see resulting from the search
+	 */
+	@ParameterizedTest(name = "#{index} - [{0}]")
+	@MethodSource("dataForTestRetrieveRelativeBalanceSeries")
+	public void testRetrieveRelativeBalanceSeries(final String label, final BalanceSeriesQueryInput input,
+			final List<RelativeBalanceResult> expectedOutput) {
+		AccountData dataService = new AccountData(testTransactionsSet1());
+		List<RelativeBalanceResult> actual = dataService.retrieveRelativeBalanceSeries(input);
+		assertEquals(expectedOutput, actual, label);
+
+		LocalDateTime bucketFrom = input.getRange().getFrom();
+		for (RelativeBalanceResult bucket : actual) {
+			LocalDateTime bucketTo = bucketFrom.plus(input.getBucketWidth());
+			if (bucketTo.isAfter(input.getRange().getTo())) {
+				bucketTo = input.getRange().getTo();
+			}
+			AccountQueryInput bucketQuery = input.getRange().toBuilder().from(bucketFrom).to(bucketTo).build();
+			assertEquals(dataService.retrieveRelativeBalance(bucketQuery), bucket, label + " bucket from " + bucketFrom);
+			bucketFrom = bucketTo;
+		}
+	}
+
+	/**
+	 * Test that {@link AccountData#retrieveBalanceAsOf(String, LocalDateTime)}
+	 * agrees with a relative balance from the start of history, however often
+	 * balances are checkpointed, including when the reversal arrives in a later
+	 * batch than the payment it cancels.
+	 * 
+	 * @param checkpointInterval number of an account's transactions between
+	 *                           balance checkpoints
+	 */
+	@ParameterizedTest(name = "#{index} - [checkpoint every {0}]")
+	@ValueSource(ints = { 1, 2, 3, 256 })
+	public void testRetrieveBalanceAsOf(final int checkpointInterval) {
+		List<Transaction> transactions = testTransactionsSet1();
+		AccountData dataService = new AccountData(transactions.subList(0, 3), checkpointInterval);
+		LocalDateTime endOfDay = LocalDateTime.parse("21/10/2018 00:00:00", DATE_FORMAT);
+		assertEquals(new RelativeBalanceResult(-35.5, 2), dataService.retrieveBalanceAsOf("ACC334455", endOfDay),
+				"Before reversal is appended.");
+
+		dataService.append(transactions.subList(3, transactions.size()));
+		assertEquals(new RelativeBalanceResult(-25.0, 1), dataService.retrieveBalanceAsOf("ACC334455", endOfDay),
+				"After reversal is appended.");
+
+		for (String accountId : List.of("ACC334455", "ACC778899", "ACC998877", "No such account")) {
+			for (Transaction transaction : transactions) {
+				for (LocalDateTime asOf : List.of(transaction.getCreatedAt(), transaction.getCreatedAt().plusSeconds(1))) {
+					AccountQueryInput history = AccountQueryInput.builder()//
+							.accountId(accountId)//
+							.from(LocalDateTime.MIN)//
+							.to(asOf).build();
+					assertEquals(dataService.retrieveRelativeBalance(history),
+							dataService.retrieveBalanceAsOf(accountId, asOf), accountId + " as of " + asOf);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test that queries running while batches are appended only ever see whole
+	 * batches. Each batch holds a large payment and its reversal plus a small
+	 * payment that stands, so any query that saw a payment without its reversal
+	 * would find a balance out of step with its count.
+	 * 
+	 * @throws Exception if a reader fails
+	 */
+	@Test
+	public void testQueriesSeeWholeBatches() throws Exception {
+		AccountData dataService = new AccountData(List.of(), 2);
+		AccountQueryInput everything = AccountQueryInput.builder()//
+				.accountId("ACC1")//
+				.from(LocalDateTime.MIN)//
+				.to(LocalDateTime.MAX).build();
+		AtomicBoolean writing = new AtomicBoolean(true);
+		ExecutorService readers = Executors.newFixedThreadPool(4);
+		List<Future<Integer>> queriesRun = new ArrayList<>();
+		for (int reader = 0; reader < 4; reader++) {
+			boolean scan = reader % 2 == 0;
+			queriesRun.add(readers.submit(() -> {
+				int queries = 0;
+				int lastCount = 0;
+				while (writing.get()) {
+					RelativeBalanceResult scanned = scan ? dataService.retrieveRelativeBalance(everything)
+							: dataService.retrieveBalanceAsOf("ACC1", LocalDateTime.MAX);
+					assertEquals(scanned.getCountTransactions().doubleValue(), scanned.getAmount(), 0.0,
+							"Balance should match count of small payments.");
+					assertTrue(scanned.getCountTransactions() >= lastCount, "Later queries should not see less.");
+					lastCount = scanned.getCountTransactions();
+					queries++;
+				}
+				return queries;
+			}));
+		}
+
+		LocalDateTime createdAt = LocalDateTime.parse("20/10/2018 12:00:00", DATE_FORMAT);
+		int batches = 2_000;
+		for (int batch = 0; batch < batches; batch++) {
+			createdAt = createdAt.plusSeconds(1);
+			dataService.append(List.of(//
+					payment("P" + batch, createdAt, 100.0), //
+					payment("S" + batch, createdAt, 1.0), //
+					Transaction.builder()//
+							.transactionId("R" + batch)//
+							.fromAccountId("ACC1")//
+							.toAccountId("ACC2")//
+							.createdAt(createdAt)//
+							.amount(100.0)//
+							.transactionType(REVERSAL)//
+							.relatedTransaction("P" + batch)//
+							.build()));
+		}
+		writing.set(false);
+		readers.shutdown();
+		assertTrue(readers.awaitTermination(10, TimeUnit.SECONDS), "Readers should finish.");
+		for (Future<Integer> queries : queriesRun) {
+			assertTrue(queries.get() > 0, "Each reader should have run queries.");
+		}
+		assertEquals(new RelativeBalanceResult((double) batches, batches),
+				dataService.retrieveRelativeBalance(everything));
+		assertEquals(new RelativeBalanceResult((double) batches, batches),
+				dataService.retrieveBalanceAsOf("ACC1", LocalDateTime.MAX));
+	}
+
+	/**
+	 * Test that a full scan seeks to the start of its date range with the sparse
+	 * time index, including ranges starting part way through a second whose
+	 * transactions straddle blocks of the index, and as the index grows with
+	 * appends.
+	 * 
+	 * @param fromSeconds start of date range, in seconds after the first
+	 *                    transaction
+	 * @param fromNanos   nanoseconds added to the start of the date range
+	 * @param toSeconds   end of date range, in seconds after the first
+	 *                    transaction
+	 */
+	@ParameterizedTest(name = "#{index} - [{0}s + {1}ns to {2}s]")
+	@CsvSource({ "0, 0, 1", "0, 0, 5000", "340, 0, 342", "341, 0, 342", "341, 500000000, 683", "682, 1, 683",
+			"1000, 0, 1667", "1666, 0, 5000", "1667, 0, 5000", "-10, 0, -1" })
+	public void testFullScanSeeksWithTimeIndex(final long fromSeconds, final long fromNanos,
+			final long toSeconds) {
+		// Three payments a second, so the runs of payments in seconds 341 and 682
+		// straddle the first and second blocks of the index.
+		LocalDateTime start = LocalDateTime.parse("01/01/2018 00:00:00", DATE_FORMAT);
+		List<Transaction> transactions = IntStream.range(0, 5_000)//
+				.mapToObj(index -> payment("P" + index, start.plusSeconds(index / 3), index + 1))//
+				.collect(Collectors.toList());
+		AccountData dataService = new AccountData(List.of());
+		for (int batch = 0; batch < transactions.size(); batch += 700) {
+			dataService.append(transactions.subList(batch, Math.min(transactions.size(), batch + 700)));
+		}
+
+		AccountQueryInput input = AccountQueryInput.builder()//
+				.accountId("ACC1")//
+				.from(start.plusSeconds(fromSeconds).plusNanos(fromNanos))//
+				.to(start.plusSeconds(toSeconds)).build();
+		RelativeBalanceResult expected = transactions.stream()//
+				.filter(transaction -> !transaction.getCreatedAt().isBefore(input.getFrom())
+						&& transaction.getCreatedAt().isBefore(input.getTo()))//
+				.reduce(new RelativeBalanceResult(), (result, transaction) -> result.addTransaction(input, transaction),
+						RelativeBalanceResult::addResult);
+		assertEquals(expected, dataService.retrieveRelativeBalance(input, AccessPath.FULL_SCAN));
+	}
+
+	/**
+	 * Test that standing queries, fixed and sliding, are pushed exactly the result
+	 * a fresh query would get after every batch that changes it, however many
+	 * amounts in cents have slid through the window, and nothing once closed.
+	 */
+	@Test
+	public void testStandingQueries() {
+		Random random = new Random(35);
+		List<Transaction> transactions = randomTransactions(random, 5, 3_000);
+		AccountData dataService = new AccountData(transactions.subList(0, 500), 16);
+		LocalDateTime start = transactions.get(0).getCreatedAt();
+		List<StandingQueryInput> queries = List.of(//
+				StandingQueryInput.builder().accountId("ACC0")//
+						.from(start.plusHours(10)).to(start.plusHours(30)).build(), //
+				StandingQueryInput.builder().accountId("ACC1").window(Duration.ofHours(1)).build(), //
+				StandingQueryInput.builder().accountId("ACC2").window(Duration.ofMinutes(10)).build(), //
+				StandingQueryInput.builder().accountId("ACC3")//
+						.from(LocalDateTime.MIN).to(LocalDateTime.MAX).build(), //
+				StandingQueryInput.builder().accountId("ACC4").window(Duration.ofMinutes(5)).build());
+		List<List<RelativeBalanceResult>> pushed = new ArrayList<>();
+		List<StandingQuery> standingQueries = new ArrayList<>();
+		for (StandingQueryInput query : queries) {
+			List<RelativeBalanceResult> results = new ArrayList<>();
+			pushed.add(results);
+			standingQueries.add(dataService.subscribe(query, results::add));
+		}
+
+		int appended = 500;
+		int pushedAfterClose = -1;
+		while (appended < transactions.size()) {
+			int batchSize = Math.min(transactions.size() - appended, random.nextInt(50) + 1);
+			dataService.append(transactions.subList(appended, appended + batchSize));
+			appended += batchSize;
+			if (pushedAfterClose < 0 && appended > 1_500) {
+				standingQueries.get(3).close();
+				pushedAfterClose = pushed.get(3).size();
+			}
+
+			LocalDateTime latest = transactions.get(appended - 1).getCreatedAt();
+			for (int index = 0; index < queries.size(); index++) {
+				StandingQueryInput query = queries.get(index);
+				AccountQueryInput equivalent = AccountQueryInput.builder()//
+						.accountId(query.getAccountId())//
+						.from(query.isSliding() ? latest.minus(query.getWindow()).plusNanos(1) : query.getFrom())//
+						.to(query.isSliding() ? latest.plusNanos(1) : query.getTo()).build();
+				List<RelativeBalanceResult> results = pushed.get(index);
+				if (index != 3 || pushedAfterClose < 0) {
+					assertEquals(dataService.retrieveRelativeBalance(equivalent), results.get(results.size() - 1),
+							query + " after " + appended + " transactions");
+				}
+				for (int result = 1; result < results.size(); result++) {
+					assertNotEquals(results.get(result - 1), results.get(result), "Only changes should be pushed.");
+				}
+			}
+		}
+		assertEquals(pushedAfterClose, pushed.get(3).size(), "Closed queries should not be pushed results.");
+	}
+
+	/**
+	 * Test that a reversal takes every duplicate it cancels out of a standing
+	 * query, even duplicates equal in every field.
+	 */
+	@Test
+	public void testStandingQueryDuplicates() {
+		AccountData dataService = new AccountData(List.of(), 2);
+		List<RelativeBalanceResult> pushed = new ArrayList<>();
+		dataService.subscribe(StandingQueryInput.builder().accountId("ACC1").window(Duration.ofHours(1)).build(),
+				pushed::add);
+
+		dataService.append(List.of(//
+				transaction("P1", "01/01/2018 00:00:00", PAYMENT, 10.0, null, "ACC2", "ACC1"), //
+				transaction("P1", "01/01/2018 00:00:00", PAYMENT, 10.0, null, "ACC2", "ACC1"), //
+				transaction("P2", "01/01/2018 00:01:00", PAYMENT, 2.5, null, "ACC2", "ACC1")));
+		assertEquals(new RelativeBalanceResult(22.5, 3), pushed.get(pushed.size() - 1));
+		dataService.append(List.of(//
+				transaction("R1", "01/01/2018 00:02:00", REVERSAL, 10.0, "P1", "ACC2", "ACC1")));
+		assertEquals(new RelativeBalanceResult(2.5, 1), pushed.get(pushed.size() - 1));
+		assertEquals(new RelativeBalanceResult(2.5, 1), dataService.retrieveBalanceAsOf("ACC1", LocalDateTime.MAX));
+	}
+
+	/**
+	 * Test that the counterparty breakdown, sequential or in parallel, matches
+	 * totals worked out one counterparty at a time, with the same reversal
+	 * exclusions as the relative balance.
+	 * 
+	 * @param limit             largest number of counterparties wanted
+	 * @param parallelThreshold number of transactions from which to aggregate in
+	 *                          parallel
+	 */
+	@ParameterizedTest(name = "#{index} - [top {0}, parallel from {1}]")
+	@CsvSource({ "2147483647, 2147483647", "2147483647, 1", "3, 2147483647", "3, 1", "1, 1", "0, 1" })
+	public void testRetrieveCounterpartyBreakdown(final int limit, final int parallelThreshold) {
+		List<Transaction> transactions = randomTransactions(new Random(36), 40, 20_000);
+		AccountData dataService = new AccountData(transactions.subList(0, 10_000));
+		dataService.append(transactions.subList(10_000, transactions.size()));
+		AccountQueryInput input = AccountQueryInput.builder()//
+				.accountId("ACC7")//
+				.from(transactions.get(2_000).getCreatedAt())//
+				.to(transactions.get(18_000).getCreatedAt()).build();
+
+		Set<String> reversed = transactions.stream()//
+				.filter(transaction -> transaction.getTransactionType().equals(REVERSAL))//
+				.map(Transaction::getRelatedTransaction)//
+				.collect(Collectors.toSet());
+		Map<String, RelativeBalanceResult> byCounterparty = new HashMap<>();
+		for (Transaction transaction : transactions) {
+			if (!transaction.getCreatedAt().isBefore(input.getFrom())
+					&& transaction.getCreatedAt().isBefore(input.getTo())
+					&& !transaction.getTransactionType().equals(REVERSAL)
+					&& !reversed.contains(transaction.getTransactionId())) {
+				String counterparty = input.getAccountId().equals(transaction.getFromAccountId())
+						? transaction.getToAccountId()
+						: input.getAccountId().equals(transaction.getToAccountId()) ? transaction.getFromAccountId()
+								: null;
+				if (counterparty != null) {
+					byCounterparty.merge(counterparty,
+							new RelativeBalanceResult().addTransaction(input, transaction),
+							RelativeBalanceResult::addResult);
+				}
+			}
+		}
+		List<CounterpartyTotal> expected = byCounterparty.entrySet().stream()//
+				.map(entry -> new CounterpartyTotal(entry.getKey(), entry.getValue().getAmount(),
+						entry.getValue().getCountTransactions()))//
+				.sorted(CounterpartyTotals.LARGEST_FIRST)//
+				.limit(limit)//
+				.collect(Collectors.toList());
+
+		List<CounterpartyTotal> actual = dataService.retrieveCounterpartyBreakdown(input, limit, parallelThreshold);
+		assertEquals(expected, actual);
+		if (limit == Integer.MAX_VALUE) {
+			assertEquals(dataService.retrieveRelativeBalance(input), sum(actual));
+		}
+	}
+
+	/**
+	 * Test that as-of queries never plan to use checkpoints, which count every
+	 * reversal, and that the breakdown and series count transactions and reversals
+	 * as of the same time as the relative balance.
+	 */
+	@Test
+	public void testAsOfQueries() {
+		List<Transaction> transactions = randomTransactions(new Random(37), 5, 5_000);
+		AccountData dataService = new AccountData(transactions);
+		AccountQueryInput input = AccountQueryInput.builder()//
+				.accountId("ACC2")//
+				.from(transactions.get(1_000).getCreatedAt())//
+				.to(transactions.get(3_000).getCreatedAt())//
+				.asOf(transactions.get(3_500).getCreatedAt()).build();
+
+		QueryPlan plan = dataService.explain(input);
+		assertFalse(plan.getEstimatedCosts().containsKey(AccessPath.CHECKPOINTS), plan.toString());
+
+		RelativeBalanceResult asOf = dataService.retrieveRelativeBalance(input);
+		RelativeBalanceResult always = dataService.retrieveRelativeBalance(input.toBuilder().asOf(null).build());
+		assertTrue(asOf.getCountTransactions() > always.getCountTransactions(),
+				"Payments reversed after the as-of time should be counted.");
+
+		// Nothing created at or after the as-of time counts, so the date range might as
+		// well end there.
+		AccountQueryInput earlier = input.toBuilder().asOf(transactions.get(2_000).getCreatedAt()).build();
+		RelativeBalanceResult asOfEarlier = dataService.retrieveRelativeBalance(earlier);
+		assertEquals(dataService.retrieveRelativeBalance(earlier.toBuilder().to(earlier.getAsOf()).build()),
+				asOfEarlier);
+		assertEquals(asOfEarlier, sum(dataService.retrieveCounterpartyBreakdown(earlier, Integer.MAX_VALUE)));
+		assertEquals(asOfEarlier, dataService.retrieveRelativeBalanceSeries(BalanceSeriesQueryInput.builder()
+				.range(earlier).bucketWidth(Duration.ofDays(1)).build()).stream()
+				.reduce(new RelativeBalanceResult(), RelativeBalanceResult::addResult));
+
+		List<CounterpartyTotal> breakdown = dataService.retrieveCounterpartyBreakdown(input, Integer.MAX_VALUE);
+		assertEquals(asOf, sum(breakdown));
+
+		List<RelativeBalanceResult> series = dataService.retrieveRelativeBalanceSeries(BalanceSeriesQueryInput
+				.builder().range(input).bucketWidth(Duration.ofDays(1)).build());
+		assertEquals(asOf, series.stream().reduce(new RelativeBalanceResult(), RelativeBalanceResult::addResult));
+	}
+
+	/**
+	 * @param totals per counterparty
+	 * @return their total amount and count, as a relative balance
+	 */
+	private static RelativeBalanceResult sum(final List<CounterpartyTotal> totals) {
+		return totals.stream()//
+				.map(total -> new RelativeBalanceResult(total.getAmount(), total.getCountTransactions()))//
+				.reduce(new RelativeBalanceResult(), RelativeBalanceResult::addResult);
+	}
+
+	/**
+	 * @param random   source of randomness
+	 * @param accounts number of accounts
+	 * @param count    number of transactions
+	 * @return payments between accounts in date order, about one in ten of them a
+	 *         reversal of an earlier transaction; amounts are in cents, up to
+	 *         $1,000
+	 */
+	private static List<Transaction> randomTransactions(final Random random, final int accounts, final int count) {
+		LocalDateTime createdAt = LocalDateTime.parse("01/01/2018 00:00:00", DATE_FORMAT);
+		List<Transaction> transactions = new ArrayList<>();
+		for (int index = 0; index < count; index++) {
+			createdAt = createdAt.plusSeconds(random.nextInt(120));
+			if (index > 0 && random.nextInt(10) == 0) {
+				Transaction reversed = transactions.get(random.nextInt(index));
+				transactions.add(Transaction.builder()//
+						.transactionId("R" + index)//
+						.fromAccountId(reversed.getFromAccountId())//
+						.toAccountId(reversed.getToAccountId())//
+						.createdAt(createdAt)//
+						.amount(reversed.getAmount())//
+						.transactionType(REVERSAL)//
+						.relatedTransaction(reversed.getTransactionId())//
+						.build());
+			} else {
+				transactions.add(Transaction.builder()//
+						.transactionId("P" + index)//
+						.fromAccountId("ACC" + random.nextInt(accounts))//
+						.toAccountId("ACC" + random.nextInt(accounts))//
+						.createdAt(createdAt)//
+						.amount((random.nextInt(100_000) + 1) / 100.0)//
+						.transactionType(PAYMENT)//
+						.build());
+			}
+		}
+		return transactions;
+	}
+
+	/**
+	 * @param transactionId ID for the transaction
+	 * @param createdAt     when the transaction was created
+	 * @param amount        amount paid to ACC1
+	 * @return payment from ACC2 to ACC1
+	 */
+	private static Transaction payment(final String transactionId, final LocalDateTime createdAt,
+			final double amount) {
+		return Transaction.builder()//
+				.transactionId(transactionId)//
+				.fromAccountId("ACC2")//
+				.toAccountId("ACC1")//
+				.createdAt(createdAt)//
+				.amount(amount)//
+				.transactionType(PAYMENT)//
+				.build();
 	}
 }
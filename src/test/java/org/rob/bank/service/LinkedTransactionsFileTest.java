@@ -0,0 +1,161 @@
+package org.rob.bank.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.rob.bank.controller.App.DATE_FORMAT;
+import static org.rob.bank.model.TransactionType.PAYMENT;
+import static org.rob.bank.model.TransactionType.REVERSAL;
+import static org.rob.bank.service.TestTransactions.assertSameAnswers;
+import static org.rob.bank.service.TestTransactions.transaction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.rob.bank.model.Transaction;
+import org.rob.bank.service.TransactionLinker.Policy;
+
+/**
+ * Test that {@link LinkedTransactionsFile} reads back what it writes.
+ */
+public final class LinkedTransactionsFileTest {
+
+	/**
+	 * Where snapshots are written.
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * @return data for {@link #testRoundTrip(String, Policy)}.
+	 */
+	private static Stream<Arguments> dataForTestRoundTrip() {
+		return Stream.of(//
+				Arguments.of("Issues flagged, everything kept.", Policy.FLAG) //
+				, Arguments.of("Transactions with issues quarantined.", Policy.QUARANTINE) //
+		);
+	}
+
+	/**
+	 * Test that transactions and the reversals linked between them survive a round
+	 * trip, and give the same answers after it.
+	 *
+	 * @param label  for test
+	 * @param policy what to do with transactions that have an integrity issue
+	 * @throws IOException if the snapshot cannot be written or read
+	 */
+	@ParameterizedTest(name = "#{index} - [{0}]")
+	@MethodSource("dataForTestRoundTrip")
+	public void testRoundTrip(final String label, final Policy policy) throws IOException {
+		LinkedTransactions linked = TransactionLinker.link(testTransactions(), policy);
+		Path file = directory.resolve("transactions" + LinkedTransactionsFile.SUFFIX);
+
+		LinkedTransactionsFile.write(linked, file);
+		LinkedTransactions read = LinkedTransactionsFile.read(file);
+
+		assertEquals(linked.getTransactions(), read.getTransactions(), label);
+		for (int position = 0; position < linked.getTransactions().size(); position++) {
+			assertEquals(linked.originalPositionOf(position), read.originalPositionOf(position),
+					label + " " + position);
+		}
+		assertTrue(read.getIssues().isEmpty(), label);
+		assertTrue(read.getQuarantined().isEmpty(), label);
+
+		assertSameAnswers(new AccountData(linked), new AccountData(read), label);
+	}
+
+	/**
+	 * Test that a file that is not a snapshot is refused.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	@Test
+	public void testNotASnapshot() throws IOException {
+		Path file = directory.resolve("transactions.csv");
+		Files.writeString(file, "transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType\n");
+
+		assertThrows(IOException.class, () -> LinkedTransactionsFile.read(file));
+	}
+
+	/**
+	 * @return data for {@link #testCorrupt(String, int, Number)}, as offsets into
+	 *         a snapshot of a payment P1 from ACC1 to ACC2 and its reversal R1.
+	 */
+	private static Stream<Arguments> dataForTestCorrupt() {
+		// Header and two account IDs take 24 bytes, the count 4, P1 33 and R1 41.
+		return Stream.of(//
+				Arguments.of("Transaction count larger than the file.", 24, Integer.MAX_VALUE) //
+				, Arguments.of("Negative transaction count.", 24, -1) //
+				, Arguments.of("Account ordinal past the last account.", 32, 2) //
+				, Arguments.of("Negative account ordinal.", 36, -1) //
+				, Arguments.of("Nanoseconds past the second.", 48, 1_000_000_000) //
+				, Arguments.of("Transaction type past the last type.", 60, (byte) 9) //
+				, Arguments.of("Reversal of itself.", 98, 1) //
+				, Arguments.of("Reversal of a transaction after it.", 98, 5) //
+				, Arguments.of("Negative original position.", 98, -2) //
+		);
+	}
+
+	/**
+	 * Test that a snapshot corrupted after its header is refused with an
+	 * {@link IOException} rather than an unchecked exception.
+	 *
+	 * @param label  for test
+	 * @param offset of the value to overwrite
+	 * @param value  an int or byte to overwrite it with
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	@ParameterizedTest(name = "#{index} - [{0}]")
+	@MethodSource("dataForTestCorrupt")
+	public void testCorrupt(final String label, final int offset, final Number value) throws IOException {
+		Path file = directory.resolve("corrupt" + LinkedTransactionsFile.SUFFIX);
+		LinkedTransactionsFile.write(TransactionLinker.link(List.of(//
+				transaction("P1", "01/01/2018 00:00:00", PAYMENT, 10.0, null, "ACC1", "ACC2"), //
+				transaction("R1", "01/01/2018 00:01:00", REVERSAL, 10.0, "P1", "ACC1", "ACC2")), Policy.FLAG), file);
+		assertEquals(2, LinkedTransactionsFile.read(file).getTransactions().size(), label);
+
+		ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+		if (value instanceof Byte) {
+			bytes.put(offset, value.byteValue());
+		} else {
+			bytes.putInt(offset, value.intValue());
+		}
+		Files.write(file, bytes.array());
+
+		IOException thrown = assertThrows(IOException.class, () -> LinkedTransactionsFile.read(file), label);
+		assertTrue(thrown.getMessage().contains("corrupt"), thrown.getMessage());
+	}
+
+	/**
+	 * @return payments and reversals, including one reversal with an issue and one
+	 *         with a fractional second
+	 */
+	private static List<Transaction> testTransactions() {
+		return List.of(//
+				transaction("P1", "01/01/2018 00:00:00", PAYMENT, 10.0, null, "ACC1", "ACC2"), //
+				transaction("P2", "01/01/2018 00:01:00", PAYMENT, 5.5, null, "ACC1", "ACC3"), //
+				transaction("R1", "01/01/2018 00:02:00", REVERSAL, 10.0, "P1", "ACC1", "ACC2"), //
+				transaction("R2", "01/01/2018 00:03:00", REVERSAL, 1.0, "NOPE", "ACC2", "ACC3"), //
+				transaction("P3", "01/01/2018 00:04:00", PAYMENT, 7.25, null, "ACC3", "ACC1"), //
+				Transaction.builder()//
+						.transactionId("R3")//
+						.fromAccountId("ACC3")//
+						.toAccountId("ACC1")//
+						.createdAt(LocalDateTime.parse("01/01/2018 00:05:00", DATE_FORMAT).plusNanos(123_456_789))//
+						.amount(7.25)//
+						.transactionType(REVERSAL)//
+						.relatedTransaction("P3")//
+						.build());
+	}
+
+}
@@ -0,0 +1,192 @@
+package org.rob.bank.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.rob.bank.model.Transaction;
+import org.rob.bank.service.model.AccountQueryInput;
+import org.rob.bank.service.model.RelativeBalanceResult;
+
+/**
+ * Test that {@link PartitionedAccountData} reads only the partitions a query
+ * needs, and answers as if all of them were one file.
+ */
+public final class PartitionedAccountDataTest {
+
+	/**
+	 * Header line of every partition.
+	 */
+	private static final String HEADER = "transactionId, fromAccountId, toAccountId, createdAt, amount, "
+			+ "transactionType, relatedTransaction";
+
+	/**
+	 * First day: a payment reversed the next day.
+	 */
+	private static final List<String> DAY_1 = List.of(//
+			"TX10001, ACC334455, ACC778899, 20/10/2018 12:47:55, 25.00, PAYMENT", //
+			"TX10002, ACC334455, ACC998877, 20/10/2018 17:33:43, 10.50, PAYMENT", //
+			"TX10003, ACC998877, ACC778899, 20/10/2018 18:00:00, 5.00, PAYMENT");
+
+	/**
+	 * Second day, gzipped: a reversal of a payment from the day before, and of one
+	 * on the same day.
+	 */
+	private static final List<String> DAY_2 = List.of(//
+			"TX10004, ACC334455, ACC998877, 21/10/2018 08:45:00, 10.50, REVERSAL, TX10002", //
+			"TX10005, ACC334455, ACC778899, 21/10/2018 09:30:00, 7.25, PAYMENT", //
+			"TX10006, ACC334455, ACC778899, 21/10/2018 10:00:00, 3.00, PAYMENT", //
+			"TX10007, ACC334455, ACC778899, 21/10/2018 10:05:00, 3.00, REVERSAL, TX10006");
+
+	/**
+	 * Fourth day; there is no file for the third.
+	 */
+	private static final List<String> DAY_4 = List.of(//
+			"TX10008, ACC778899, ACC334455, 23/10/2018 11:00:00, 1.75, PAYMENT");
+
+	/**
+	 * Directory holding the partitions.
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * @return data for
+	 *         {@link #testRetrieveRelativeBalance(String, AccountQueryInput, int)}.
+	 */
+	private static Stream<Arguments> dataForTestRetrieveRelativeBalance() {
+		return Stream.of(//
+				Arguments.of("Within first day, payment reversed the next day.", AccountQueryInput.builder()//
+						.accountId("ACC334455")//
+						.fromString("20/10/2018 12:00:00")//
+						.toString("20/10/2018 19:00:00").build(), 1) //
+				, Arguments.of("Across first two days.", AccountQueryInput.builder()//
+						.accountId("ACC334455")//
+						.fromString("20/10/2018 12:00:00")//
+						.toString("21/10/2018 19:00:00").build(), 2) //
+				, Arguments.of("Second day only.", AccountQueryInput.builder()//
+						.accountId("ACC778899")//
+						.fromString("21/10/2018 00:00:00")//
+						.toString("22/10/2018 00:00:00").build(), 1) //
+				, Arguments.of("Day with no partition.", AccountQueryInput.builder()//
+						.accountId("ACC778899")//
+						.fromString("22/10/2018 00:00:00")//
+						.toString("23/10/2018 00:00:00").build(), 0) //
+				, Arguments.of("Everything.", AccountQueryInput.builder()//
+						.accountId("ACC778899")//
+						.fromString("01/01/2018 00:00:00")//
+						.toString("01/01/2019 00:00:00").build(), 3) //
+		);
+	}
+
+	/**
+	 * Test that a query reads only the partitions overlapping its date range, and
+	 * gets the same result as a query over all the data at once.
+	 *
+	 * @param label              for test
+	 * @param input              search criteria
+	 * @param expectedPartitions number of partitions the query should read
+	 * @throws IOException if the partitions cannot be written or read
+	 */
+	@ParameterizedTest(name = "#{index} - [{0}]")
+	@MethodSource("dataForTestRetrieveRelativeBalance")
+	public void testRetrieveRelativeBalance(final String label, final AccountQueryInput input,
+			final int expectedPartitions) throws IOException {
+		writePartition("transactions-2018-10-20.csv", DAY_1, false);
+		writePartition("transactions-2018-10-21.csv.gz", DAY_2, true);
+		writePartition("transactions-2018-10-23.csv", DAY_4, false);
+		Files.writeString(directory.resolve("README.txt"), "Not a partition.");
+
+		List<Transaction> all = Stream.of(DAY_1, DAY_2, DAY_4).flatMap(List::stream)//
+				.map(TransactionCsvReader::fromSingleLine)//
+				.collect(Collectors.toList());
+		RelativeBalanceResult expected = new AccountData(all).retrieveRelativeBalance(input);
+
+		PartitionedAccountData dataService = PartitionedAccountData.open(directory);
+		assertEquals(3, dataService.getPartitionCount(), label);
+		assertEquals(expected, dataService.retrieveRelativeBalance(input), label);
+		assertEquals(expectedPartitions, dataService.getLoadedPartitionCount(), label);
+	}
+
+	/**
+	 * Test that two partitions for the same day are rejected.
+	 *
+	 * @throws IOException if the partitions cannot be written
+	 */
+	@Test
+	public void testSameDayTwice() throws IOException {
+		writePartition("2018-10-20.csv", DAY_1, false);
+		writePartition("2018-10-20.csv.gz", DAY_1, true);
+		assertThrows(IOException.class, () -> PartitionedAccountData.open(directory));
+	}
+
+	/**
+	 * Test that a partition holding a transaction created on another day is
+	 * rejected when opened, rather than skipped by queries for that day.
+	 *
+	 * @throws IOException if the partitions cannot be written
+	 */
+	@Test
+	public void testTransactionOnAnotherDay() throws IOException {
+		writePartition("transactions-2018-10-20.csv", DAY_1, false);
+		writePartition("transactions-2018-10-21.csv.gz", List.of(//
+				"TX10004, ACC334455, ACC998877, 21/10/2018 08:45:00, 10.50, REVERSAL, TX10002", //
+				"TX10005, ACC334455, ACC778899, 22/10/2018 09:30:00, 7.25, PAYMENT"), true);
+
+		IOException thrown = assertThrows(IOException.class, () -> PartitionedAccountData.open(directory));
+		assertTrue(thrown.getMessage().contains("[TX10005]"), thrown.getMessage());
+	}
+
+	/**
+	 * Test that a payment is cancelled by the first reversal after it, even when
+	 * an earlier day held a reversal naming it before it was made.
+	 *
+	 * @throws IOException if the partitions cannot be written or read
+	 */
+	@Test
+	public void testReversalBeforePayment() throws IOException {
+		writePartition("2018-10-20.csv", List.of(//
+				"TX10002, ACC334455, ACC998877, 20/10/2018 08:45:00, 10.50, REVERSAL, TX10001"), false);
+		writePartition("2018-10-21.csv", List.of(//
+				"TX10001, ACC334455, ACC998877, 21/10/2018 12:00:00, 10.50, PAYMENT"), false);
+		writePartition("2018-10-22.csv", List.of(//
+				"TX10003, ACC334455, ACC998877, 22/10/2018 08:45:00, 10.50, REVERSAL, TX10001"), false);
+
+		AccountQueryInput input = AccountQueryInput.builder()//
+				.accountId("ACC334455")//
+				.fromString("21/10/2018 00:00:00")//
+				.toString("22/10/2018 00:00:00").build();
+		assertEquals(new RelativeBalanceResult(), PartitionedAccountData.open(directory).retrieveRelativeBalance(input));
+	}
+
+	/**
+	 * @param name    file name
+	 * @param lines   transactions, one per line, without the header
+	 * @param gzipped true to gzip the file
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writePartition(final String name, final List<String> lines, final boolean gzipped)
+			throws IOException {
+		byte[] content = (HEADER + "\n" + String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+		try (OutputStream out = gzipped ? new GZIPOutputStream(Files.newOutputStream(directory.resolve(name)))
+				: Files.newOutputStream(directory.resolve(name))) {
+			out.write(content);
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package org.rob.bank.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+import org.rob.bank.service.ResultWriter.Format;
+import org.rob.bank.service.model.AccountQueryInput;
+import org.rob.bank.service.model.RelativeBalanceResult;
+
+/**
+ * Test that {@link ResultWriter} lays out results and keeps them in order.
+ */
+public final class ResultWriterTest {
+
+	/**
+	 * Criteria shared by tests.
+	 */
+	private static final AccountQueryInput QUERY = AccountQueryInput.builder()//
+			.accountId("ACC334455")//
+			.fromString("20/10/2018 12:00:00")//
+			.toString("20/10/2018 19:00:00").build();
+
+	/**
+	 * Test comma separated value output.
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	@Test
+	public void testCsv() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ResultWriter writer = new ResultWriter(Channels.newChannel(out), Format.CSV)) {
+			writer.write(0, QUERY, new RelativeBalanceResult(-1_025.0, 1));
+			writer.write(1, QUERY.toBuilder().accountId("A,\"B\"").build(), new RelativeBalanceResult(0.5, 2, true));
+		}
+		assertEquals("accountId,from,to,relativeBalance,countTransactions,provisional\n"
+				+ "ACC334455,20/10/2018 12:00:00,20/10/2018 19:00:00,\"-$1,025.00\",1,false\n"
+				+ "\"A,\"\"B\"\"\",20/10/2018 12:00:00,20/10/2018 19:00:00,\"$0.50\",2,true\n",
+				out.toString(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Test JSON lines output.
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	@Test
+	public void testJsonLines() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ResultWriter writer = new ResultWriter(Channels.newChannel(out), Format.JSON_LINES)) {
+			writer.write(0, QUERY.toBuilder().accountId("A\"\\B").build(), new RelativeBalanceResult(-25.0, 1));
+		}
+		assertEquals("{\"accountId\":\"A\\\"\\\\B\",\"from\":\"20/10/2018 12:00:00\",\"to\":\"20/10/2018 19:00:00\","
+				+ "\"relativeBalance\":\"-$25.00\",\"countTransactions\":1,\"provisional\":false}\n",
+				out.toString(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Test that results written from many threads, in any order, come out in
+	 * sequence, across many flushes of the buffer.
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	@Test
+	public void testParallelWritersKeepOrder() throws IOException {
+		int count = 20_000;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ResultWriter writer = new ResultWriter(Channels.newChannel(out), Format.CSV)) {
+			// Reverse each block of 100 so most results arrive before their predecessors.
+			LongStream.range(0, count).parallel().map(index -> index - index % 100 + 99 - index % 100)
+					.forEach(sequence -> {
+						try {
+							writer.write(sequence, QUERY, new RelativeBalanceResult((double) sequence, 1));
+						} catch (IOException ioe) {
+							throw new UncheckedIOException(ioe);
+						}
+					});
+		}
+		List<String> expected = IntStream.range(0, count).mapToObj(index -> String.format(Locale.ENGLISH,
+				"ACC334455,20/10/2018 12:00:00,20/10/2018 19:00:00,\"$%,d.00\",1,false", index))
+				.collect(Collectors.toList());
+		List<String> lines = List.of(out.toString(StandardCharsets.UTF_8).split("\n"));
+		assertEquals(expected, lines.subList(1, lines.size()));
+	}
+
+	/**
+	 * Test that closing with a gap in the sequence is reported.
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	@Test
+	public void testGapInSequence() throws IOException {
+		ResultWriter writer = new ResultWriter(Channels.newChannel(new ByteArrayOutputStream()), Format.CSV);
+		writer.write(1, QUERY, new RelativeBalanceResult());
+		assertThrows(IllegalStateException.class, writer::close, "Missing result 0 should be reported.");
+	}
+
+	/**
+	 * Test that writing a sequence number twice is refused at once, whether it was
+	 * already written out or still waiting, and leaves the gap reported as it was.
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	@Test
+	public void testRepeatedSequence() throws IOException {
+		ResultWriter writer = new ResultWriter(Channels.newChannel(new ByteArrayOutputStream()), Format.CSV);
+		writer.write(0, QUERY, new RelativeBalanceResult());
+		writer.write(2, QUERY, new RelativeBalanceResult());
+		assertThrows(IllegalArgumentException.class, () -> writer.write(0, QUERY, new RelativeBalanceResult()));
+		assertThrows(IllegalArgumentException.class, () -> writer.write(2, QUERY, new RelativeBalanceResult()));
+		assertThrows(IllegalArgumentException.class, () -> writer.write(-1, QUERY, new RelativeBalanceResult()));
+		IllegalStateException thrown = assertThrows(IllegalStateException.class, writer::close);
+		assertEquals("Result 1 was never written, so 1 results after it were not written either.",
+				thrown.getMessage());
+	}
+
+}
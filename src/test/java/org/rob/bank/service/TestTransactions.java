@@ -0,0 +1,75 @@
+package org.rob.bank.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.rob.bank.controller.App.DATE_FORMAT;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.rob.bank.model.Transaction;
+import org.rob.bank.model.TransactionType;
+import org.rob.bank.service.model.AccountQueryInput;
+
+/**
+ * Small hand-written transactions between a few accounts, shared by tests of
+ * linking and of what linked transactions are loaded from.
+ */
+final class TestTransactions {
+
+	/**
+	 * Accounts in the test data.
+	 */
+	static final List<String> ACCOUNTS = List.of("ACC1", "ACC2", "ACC3");
+
+	/**
+	 * Not for instantiation.
+	 */
+	private TestTransactions() {
+	}
+
+	/**
+	 * @param transactionId      ID for the transaction
+	 * @param createdAt          when the transaction was created
+	 * @param type               payment or reversal
+	 * @param amount             amount paid
+	 * @param relatedTransaction ID of the transaction reversed; null for a payment
+	 * @param from               account paying
+	 * @param to                 account paid
+	 * @return the transaction
+	 */
+	static Transaction transaction(final String transactionId, final String createdAt,
+			final TransactionType type, final double amount, final String relatedTransaction,
+			final String from, final String to) {
+		return Transaction.builder()//
+				.transactionId(transactionId)//
+				.fromAccountId(from)//
+				.toAccountId(to)//
+				.createdAt(LocalDateTime.parse(createdAt, DATE_FORMAT))//
+				.amount(amount)//
+				.transactionType(type)//
+				.relatedTransaction(relatedTransaction)//
+				.build();
+	}
+
+	/**
+	 * Assert that two sets of data give the same relative balance and balance for
+	 * each of {@link #ACCOUNTS} over all time.
+	 *
+	 * @param expected data to compare with
+	 * @param actual   data under test
+	 * @param label    for test
+	 */
+	static void assertSameAnswers(final AccountData expected, final AccountData actual, final String label) {
+		for (String accountId : ACCOUNTS) {
+			AccountQueryInput input = AccountQueryInput.builder()//
+					.accountId(accountId)//
+					.from(LocalDateTime.MIN)//
+					.to(LocalDateTime.MAX).build();
+			assertEquals(expected.retrieveRelativeBalance(input), actual.retrieveRelativeBalance(input),
+					label + " " + accountId);
+			assertEquals(expected.retrieveBalanceAsOf(accountId, LocalDateTime.MAX),
+					actual.retrieveBalanceAsOf(accountId, LocalDateTime.MAX), label + " " + accountId);
+		}
+	}
+
+}
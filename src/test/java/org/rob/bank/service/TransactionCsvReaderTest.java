@@ -2,15 +2,35 @@
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.rob.bank.controller.App.DATE_FORMAT;
 import static org.rob.bank.model.TransactionType.PAYMENT;
 import static org.rob.bank.model.TransactionType.REVERSAL;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.rob.bank.model.Transaction;
 import org.rob.bank.service.TransactionCsvReader;
 
@@ -34,6 +54,106 @@ public void testFromFile() throws URISyntaxException {
 		}, "Reading from " + file + " should not throw any exception.");
 	}
 
+	/**
+	 * Test reading from a gzipped file.
+	 */
+	@Test
+	public void testFromGzipFile() {
+
+		final String file = "/testData.csv.gz";
+		assertDoesNotThrow(() -> {
+			List<Transaction> actual = TransactionCsvReader.readFromFile(file);
+			assertEquals(expectedTestData(), actual);
+		}, "Reading from " + file + " should not throw any exception.");
+	}
+
+	/**
+	 * Test that gzipped data split across many blocks, including lines longer than
+	 * a block, comes back in file order.
+	 * 
+	 * @param blockSize number of bytes handed to each parser thread
+	 * @throws IOException if the pipeline fails
+	 */
+	@ParameterizedTest(name = "#{index} - [block size {0}]")
+	@ValueSource(ints = { 16, 256, GzipCsvPipeline.DEFAULT_BLOCK_SIZE })
+	public void testGzipBlocksKeepOrder(final int blockSize) throws IOException {
+		List<String> lines = IntStream.range(0, 2_000)//
+				.mapToObj(index -> String.format("TX%d, ACC%d, ACC%d, 20/10/2018 12:%02d:%02d, %d.25, PAYMENT", //
+						index, index % 7, index % 11, index / 60 % 60, index % 60, index))//
+				.collect(Collectors.toList());
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+			out.write(("header\n" + String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+		}
+
+		List<Transaction> actual = new ArrayList<>();
+		GzipCsvPipeline.read(new ByteArrayInputStream(compressed.toByteArray()), actual::add, blockSize);
+		assertEquals(lines.stream().map(TransactionCsvReader::fromSingleLine).collect(Collectors.toList()), actual);
+	}
+
+	/**
+	 * Test that a file missing from the classpath is reported, gzipped or not,
+	 * rather than left to fail later or wait forever.
+	 * 
+	 * @param file name of a file that does not exist
+	 */
+	@ParameterizedTest(name = "#{index} - [{0}]")
+	@ValueSource(strings = { "/noSuchFile.csv", "/noSuchFile.csv.gz" })
+	public void testMissingFile(final String file) {
+		assertTimeoutPreemptively(Duration.ofSeconds(10),
+				() -> assertThrows(FileNotFoundException.class, () -> TransactionCsvReader.readFromFile(file)));
+	}
+
+	/**
+	 * Test that a failure decompressing other than an {@link IOException} reaches
+	 * the reader rather than leaving it waiting for data that never comes.
+	 */
+	@Test
+	public void testGzipUnexpectedFailure() {
+		InputStream failing = new InputStream() {
+			@Override
+			public int read() {
+				throw new IllegalStateException("Broken stream.");
+			}
+		};
+		assertTimeoutPreemptively(Duration.ofSeconds(10),
+				() -> assertThrows(IllegalStateException.class, () -> GzipCsvPipeline.read(failing, t -> {
+				})));
+	}
+
+	/**
+	 * Test that blank lines are skipped the same way whether or not the file is
+	 * gzipped.
+	 * 
+	 * @param fileName  name of the file to write and read
+	 * @param directory where to write the file
+	 * @throws IOException if the file cannot be written or read
+	 */
+	@ParameterizedTest(name = "#{index} - [{0}]")
+	@ValueSource(strings = { "blankLines.csv", "blankLines.csv.gz" })
+	public void testBlankLinesSkipped(final String fileName, @TempDir final Path directory) throws IOException {
+		byte[] data;
+		try (InputStream in = TransactionCsvReaderTest.class.getResourceAsStream("/testData.csv")) {
+			// Blank and whitespace lines after the header, between records and at the end.
+			String[] lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+			String records = String.join("\n  \n", Arrays.copyOfRange(lines, 1, lines.length));
+			data = (lines[0] + "\n\n" + records + "\n\n").getBytes(StandardCharsets.UTF_8);
+		}
+		Path file = directory.resolve(fileName);
+		if (fileName.endsWith(".gz")) {
+			try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+				out.write(data);
+			}
+		} else {
+			Files.write(file, data);
+		}
+
+		List<Transaction> actual = new ArrayList<>();
+		TransactionCsvReader.readFromPath(file, actual::add);
+		assertEquals(expectedTestData(), actual);
+	}
+
 	/**
 	 * @return what we expect to read from the test file.
 	 */
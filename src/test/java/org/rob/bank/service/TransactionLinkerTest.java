@@ -0,0 +1,130 @@
+package org.rob.bank.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.rob.bank.controller.App.DATE_FORMAT;
+import static org.rob.bank.model.TransactionType.PAYMENT;
+import static org.rob.bank.model.TransactionType.REVERSAL;
+import static org.rob.bank.service.TestTransactions.ACCOUNTS;
+import static org.rob.bank.service.TestTransactions.assertSameAnswers;
+import static org.rob.bank.service.TestTransactions.transaction;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.rob.bank.model.Transaction;
+import org.rob.bank.service.TransactionLinker.Policy;
+import org.rob.bank.service.model.IntegrityIssue;
+import org.rob.bank.service.model.IntegrityIssue.Kind;
+
+/**
+ * Test that {@link TransactionLinker} finds integrity issues and links
+ * reversals so that {@link AccountData} answers as it would without linking.
+ */
+public final class TransactionLinkerTest {
+
+	/**
+	 * Every kind of issue found, in order.
+	 */
+	private static final List<IntegrityIssue> EXPECTED_ISSUES = List.of(//
+			new IntegrityIssue(Kind.DUPLICATE_ID, 3, "P1", 0), //
+			new IntegrityIssue(Kind.UNKNOWN_RELATED_TRANSACTION, 4, "R2", -1), //
+			new IntegrityIssue(Kind.RELATED_TRANSACTION_LATER, 5, "R3", 8), //
+			new IntegrityIssue(Kind.REVERSAL_OF_REVERSAL, 6, "R4", 2), //
+			new IntegrityIssue(Kind.MISMATCHED_REVERSAL, 7, "R5", 1));
+
+	/**
+	 * @return data for {@link #testLink(String, Policy, List, List)}.
+	 */
+	private static Stream<Arguments> dataForTestLink() {
+		List<Transaction> all = testTransactions();
+		List<Transaction> clean = List.of(all.get(0), all.get(1), all.get(2), all.get(8));
+		return Stream.of(//
+				Arguments.of("Flag issues, keep everything.", Policy.FLAG, all, all) //
+				, Arguments.of("Quarantine transactions with issues.", Policy.QUARANTINE, all, clean) //
+		);
+	}
+
+	/**
+	 * Test that issues are found, transactions are kept or quarantined, and the
+	 * linked data gives the same answers as the transactions accepted.
+	 *
+	 * @param label            for test
+	 * @param policy           what to do with transactions that have an issue
+	 * @param transactions     data to link
+	 * @param expectedAccepted transactions expected to be kept
+	 */
+	@ParameterizedTest(name = "#{index} - [{0}]")
+	@MethodSource("dataForTestLink")
+	public void testLink(final String label, final Policy policy, final List<Transaction> transactions,
+			final List<Transaction> expectedAccepted) {
+		LinkedTransactions linked = TransactionLinker.link(transactions, policy);
+
+		assertEquals(EXPECTED_ISSUES, linked.getIssues(), label);
+		assertEquals(expectedAccepted, linked.getTransactions(), label);
+		List<Transaction> expectedQuarantined = new ArrayList<>(transactions);
+		expectedQuarantined.removeAll(expectedAccepted);
+		assertEquals(expectedQuarantined, linked.getQuarantined(), label);
+		assertSameAnswers(new AccountData(expectedAccepted), new AccountData(linked), label);
+	}
+
+	/**
+	 * Test that clean data, large enough to be linked in parallel, has no issues
+	 * and gives the same answers linked as not.
+	 */
+	@Test
+	public void testLinkCleanData() {
+		LocalDateTime start = LocalDateTime.parse("01/01/2018 00:00:00", DATE_FORMAT);
+		List<Transaction> transactions = new ArrayList<>();
+		for (int index = 0; index < 50_000; index++) {
+			Transaction.TransactionBuilder transaction = Transaction.builder()//
+					.transactionId("T" + index)//
+					.fromAccountId(ACCOUNTS.get(index % 3))//
+					.toAccountId(ACCOUNTS.get(index / 3 % 3))//
+					.createdAt(start.plusSeconds(index))//
+					.amount(index % 100 + 0.25);
+			if (index % 10 == 9) {
+				// Reverse the payment three before this.
+				Transaction reversed = transactions.get(index - 3);
+				transaction.fromAccountId(reversed.getFromAccountId())//
+						.toAccountId(reversed.getToAccountId())//
+						.amount(reversed.getAmount())//
+						.transactionType(REVERSAL)//
+						.relatedTransaction(reversed.getTransactionId());
+			} else {
+				transaction.transactionType(PAYMENT);
+			}
+			transactions.add(transaction.build());
+		}
+
+		LinkedTransactions linked = TransactionLinker.link(transactions, Policy.QUARANTINE);
+		assertTrue(linked.getIssues().isEmpty(), () -> linked.getIssues().stream().limit(5)//
+				.map(IntegrityIssue::toString).collect(Collectors.joining(", ")));
+		assertEquals(transactions, linked.getTransactions());
+		assertSameAnswers(new AccountData(transactions), new AccountData(linked), "Clean data.");
+	}
+
+	/**
+	 * @return transactions with one of each kind of issue
+	 */
+	private static List<Transaction> testTransactions() {
+		return List.of(//
+				transaction("P1", "01/01/2018 00:00:00", PAYMENT, 10.0, null, "ACC1", "ACC2"), //
+				transaction("P2", "01/01/2018 00:01:00", PAYMENT, 5.0, null, "ACC1", "ACC3"), //
+				transaction("R1", "01/01/2018 00:02:00", REVERSAL, 10.0, "P1", "ACC1", "ACC2"), //
+				transaction("P1", "01/01/2018 00:03:00", PAYMENT, 2.0, null, "ACC2", "ACC3"), //
+				transaction("R2", "01/01/2018 00:04:00", REVERSAL, 1.0, "NOPE", "ACC2", "ACC3"), //
+				transaction("R3", "01/01/2018 00:05:00", REVERSAL, 4.0, "P9", "ACC3", "ACC1"), //
+				transaction("R4", "01/01/2018 00:06:00", REVERSAL, 10.0, "R1", "ACC1", "ACC2"), //
+				transaction("R5", "01/01/2018 00:07:00", REVERSAL, 6.0, "P2", "ACC1", "ACC3"), //
+				transaction("P9", "01/01/2018 00:08:00", PAYMENT, 4.0, null, "ACC3", "ACC1"));
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.rob.bank.service.model;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test validation.
+ */
+public final class BalanceSeriesQueryInputTest {
+
+	/**
+	 * Date range shared by tests.
+	 */
+	private static final AccountQueryInput RANGE = AccountQueryInput.builder()//
+			.accountId("foo")//
+			.from(LocalDateTime.now().minusDays(1))//
+			.to(LocalDateTime.now().plusDays(1))//
+			.build();
+
+	/**
+	 * Test that we cannot set a {@link BalanceSeriesQueryInput#getBucketWidth()}
+	 * of zero.
+	 */
+	@Test
+	public void testZeroBucketWidth() {
+		assertThrows(IllegalStateException.class, () -> {
+			BalanceSeriesQueryInput.builder()//
+					.range(RANGE)//
+					.bucketWidth(Duration.ZERO)//
+					.build();
+		}, "Input criteria should not allow zero bucket width.");
+
+	}
+
+	/**
+	 * Test that we can set a positive {@link BalanceSeriesQueryInput#getBucketWidth()}.
+	 */
+	@Test
+	public void testPositiveBucketWidth() {
+		assertDoesNotThrow(() -> {
+			BalanceSeriesQueryInput.builder()//
+					.range(RANGE)//
+					.bucketWidth(Duration.ofDays(1))//
+					.build();
+		}, "Input criteria should allow positive bucket width.");
+
+	}
+
+	/**
+	 * Test that a bucket width splitting the date range into too many buckets is
+	 * refused, however long the range, and that the narrowest allowed is not.
+	 */
+	@Test
+	public void testTooManyBuckets() {
+		LocalDateTime start = LocalDateTime.of(2018, 1, 1, 0, 0);
+		AccountQueryInput maxSeconds = AccountQueryInput.builder()//
+				.accountId("foo")//
+				.from(start)//
+				.to(start.plusSeconds(BalanceSeriesQueryInput.MAX_BUCKETS))//
+				.build();
+		AccountQueryInput forever = maxSeconds.toBuilder().from(LocalDateTime.MIN).to(LocalDateTime.MAX).build();
+		for (AccountQueryInput range : List.of(maxSeconds, forever)) {
+			assertThrows(IllegalStateException.class, () -> {
+				BalanceSeriesQueryInput.builder()//
+						.range(range)//
+						.bucketWidth(Duration.ofSeconds(1).minusNanos(1))//
+						.build();
+			}, "Input criteria should not allow more than " + BalanceSeriesQueryInput.MAX_BUCKETS + " buckets.");
+		}
+
+		assertEquals(BalanceSeriesQueryInput.MAX_BUCKETS, BalanceSeriesQueryInput.builder()//
+				.range(maxSeconds)//
+				.bucketWidth(Duration.ofSeconds(1))//
+				.build().getBucketCount());
+	}
+
+	/**
+	 * Test that a bucket wider than the date range, however wide, gives one bucket.
+	 */
+	@Test
+	public void testWideBucket() {
+		assertEquals(1, BalanceSeriesQueryInput.builder()//
+				.range(RANGE)//
+				.bucketWidth(Duration.ofSeconds(Long.MAX_VALUE))//
+				.build().getBucketCount());
+	}
+
+}
@@ -0,0 +1,45 @@
+package org.rob.bank.service.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.text.DecimalFormat;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Test that {@link DollarFormat} matches the {@link DecimalFormat} pattern it
+ * replaces.
+ */
+public final class DollarFormatTest {
+
+	/**
+	 * Test formatting against <code>$#,##0.00;-$#,##0.00</code>.
+	 * 
+	 * @param amount dollars and cents
+	 */
+	@ParameterizedTest(name = "#{index} - [{0}]")
+	@ValueSource(doubles = { 0.0, -0.0, 0.001, -0.001, 0.125, 0.135, 5.0, -25.0, 10.5, -32.25, 37.25, 999.99,
+			1_000.0, -1_000.01, 123_456.78, -1_234_567.89, 1_000_000_000.5, -610.585, 894.055, 2.675, 1.005,
+			9_999_999_999_999.99, 1e13, 999_999_999_999_999.9, -9.3e16, 1e300, Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN,
+			Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY })
+	public void testMatchesDecimalFormat(final double amount) {
+		DecimalFormat expected = new DecimalFormat("$#,##0.00;-$#,##0.00");
+		assertEquals(expected.format(amount), DollarFormat.format(amount));
+	}
+
+	/**
+	 * Test formatting of balances kept in whole cents, which never need exact
+	 * rounding.
+	 * 
+	 * @param cents whole cents
+	 */
+	@ParameterizedTest(name = "#{index} - [{0}]")
+	@ValueSource(longs = { 0, 1, -1, 7, 29, 115, -61_059, 89_405, 99_999, 100_000, -123_456_789,
+			999_999_999_999_999L, -999_999_999_999_999L })
+	public void testWholeCents(final long cents) {
+		DecimalFormat expected = new DecimalFormat("$#,##0.00;-$#,##0.00");
+		assertEquals(expected.format(Cents.toDollars(cents)), DollarFormat.format(Cents.toDollars(cents)));
+	}
+
+}
@@ -0,0 +1,79 @@
+package org.rob.bank.service.model;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test validation.
+ */
+public final class StandingQueryInputTest {
+
+	/**
+	 * Test that we need either a fixed window or a sliding one.
+	 */
+	@Test
+	public void testNoWindow() {
+		assertThrows(IllegalStateException.class, () -> {
+			StandingQueryInput.builder()//
+					.accountId("foo")//
+					.from(LocalDateTime.now())//
+					.build();
+		}, "Input criteria should not allow a window without an end.");
+
+	}
+
+	/**
+	 * Test that we cannot have both a fixed window and a sliding one.
+	 */
+	@Test
+	public void testBothWindows() {
+		assertThrows(IllegalStateException.class, () -> {
+			StandingQueryInput.builder()//
+					.accountId("foo")//
+					.from(LocalDateTime.now().minusDays(1))//
+					.to(LocalDateTime.now())//
+					.window(Duration.ofDays(1))//
+					.build();
+		}, "Input criteria should not allow both kinds of window.");
+
+	}
+
+	/**
+	 * Test that we cannot set a sliding window of zero.
+	 */
+	@Test
+	public void testZeroWindow() {
+		assertThrows(IllegalStateException.class, () -> {
+			StandingQueryInput.builder()//
+					.accountId("foo")//
+					.window(Duration.ZERO)//
+					.build();
+		}, "Input criteria should not allow zero window.");
+
+	}
+
+	/**
+	 * Test that we can set a fixed window or a positive sliding window.
+	 */
+	@Test
+	public void testValidWindows() {
+		assertDoesNotThrow(() -> {
+			StandingQueryInput.builder()//
+					.accountId("foo")//
+					.from(LocalDateTime.now().minusDays(1))//
+					.to(LocalDateTime.now())//
+					.build();
+			StandingQueryInput.builder()//
+					.accountId("foo")//
+					.window(Duration.ofHours(1))//
+					.build();
+		}, "Input criteria should allow fixed or positive sliding windows.");
+
+	}
+
+}